@@ -0,0 +1,95 @@
+package thjread.dilithium;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+
+/**
+ * Decodes drawables straight to the size and pixel format they are drawn at, so that no
+ * full-resolution ARGB_8888 original has to be kept around.
+ */
+final class BitmapDecoder {
+    private BitmapDecoder() {
+    }
+
+    /**
+     * Decodes resId to width x height in the given config. The decoder subsamples and scales
+     * while decoding where it can; any intermediate bitmap is recycled. For ALPHA_8 the luminance
+     * of the image becomes the alpha mask, which suits the white-on-black ambient art.
+     */
+    static Bitmap decode(Resources resources, int resId, int width, int height,
+                         Bitmap.Config config) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeResource(resources, resId, options);
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= width
+                && options.outHeight / (sampleSize * 2) >= height) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inScaled = true;
+        options.inDensity = options.outWidth / sampleSize;
+        options.inTargetDensity = width;
+        options.inPreferredConfig = config == Bitmap.Config.ALPHA_8
+                ? Bitmap.Config.ARGB_8888 : config;
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, resId, options);
+
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height) {
+            bitmap = replace(bitmap, Bitmap.createScaledBitmap(bitmap, width, height,
+                    true /* filter */));
+        }
+        if (config == Bitmap.Config.ALPHA_8) {
+            bitmap = replace(bitmap, luminanceToAlpha(bitmap));
+        } else if (bitmap.getConfig() != config) {
+            // PNGs with an alpha channel ignore inPreferredConfig.
+            bitmap = replace(bitmap, bitmap.copy(config, false));
+        }
+        return bitmap;
+    }
+
+    /**
+     * Decodes a drawable that is already at the size it is drawn at. The pre-rendered ambient
+     * art is greyscale, which the decoder may turn into ALPHA_8 directly.
+     */
+    static Bitmap decodeExact(Resources resources, int resId, Bitmap.Config config) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inScaled = false;
+        options.inPreferredConfig = config;
+        Bitmap bitmap = BitmapFactory.decodeResource(resources, resId, options);
+        if (bitmap.getConfig() == config) {
+            return bitmap;
+        } else if (config == Bitmap.Config.ALPHA_8) {
+            return replace(bitmap, luminanceToAlpha(bitmap));
+        } else {
+            return replace(bitmap, bitmap.copy(config, false));
+        }
+    }
+
+    private static Bitmap luminanceToAlpha(Bitmap source) {
+        Bitmap mask = Bitmap.createBitmap(source.getWidth(), source.getHeight(),
+                Bitmap.Config.ALPHA_8);
+        Paint paint = new Paint();
+        paint.setColorFilter(new ColorMatrixColorFilter(new ColorMatrix(new float[] {
+                0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0,
+                0.299f, 0.587f, 0.114f, 0, 0,
+        })));
+        new Canvas(mask).drawBitmap(source, 0, 0, paint);
+        return mask;
+    }
+
+    private static Bitmap replace(Bitmap old, Bitmap replacement) {
+        if (replacement != old) {
+            old.recycle();
+        }
+        return replacement;
+    }
+}
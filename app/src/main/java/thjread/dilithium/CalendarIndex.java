@@ -0,0 +1,224 @@
+package thjread.dilithium;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.CalendarContract;
+import android.support.wearable.provider.WearableCalendarContract;
+import android.text.format.DateUtils;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.TimeZone;
+
+/**
+ * The handful of timed calendar instances the face can show, loaded with one filtered query.
+ * The index is immutable: it is built on a background thread by {@link #query} and replaced
+ * wholesale when the calendar changes, the day rolls over or the face runs past the instances it
+ * kept. Picking the current and next event from it is an in-memory scan, and only has to be
+ * redone when now passes the start of one of them (see {@link #select}).
+ */
+final class CalendarIndex {
+    /* Enough to cover a busy day; if there are more, the index is reloaded when it runs out. */
+    private static final int MAX_INSTANCES = 12;
+
+    private static final String[] PROJECTION = new String[] {
+            CalendarContract.Instances.BEGIN,         // 0
+            CalendarContract.Instances.END,           // 1
+            CalendarContract.Instances.DESCRIPTION,   // 2
+    };
+    private static final String SELECTION = CalendarContract.Instances.ALL_DAY + "=0 AND "
+            + CalendarContract.Instances.END + ">?";
+    private static final String SORT_ORDER = CalendarContract.Instances.BEGIN + " ASC";
+
+    static final CalendarIndex EMPTY = new CalendarIndex(new long[0], new long[0],
+            new CalendarLabels.Label[0], 0, CalendarLabels.Label.NONE, Long.MAX_VALUE);
+
+    /* Sorted by begin. */
+    private final long[] mBegin;
+    private final long[] mEnd;
+    private final CalendarLabels.Label[] mLabel;
+    private final int mCount;
+    private final CalendarLabels.Label mPlaceholder;
+
+    /** When the index goes stale and has to be queried again. */
+    final long refreshAt;
+
+    private CalendarIndex(long[] begin, long[] end, CalendarLabels.Label[] label, int count,
+                          CalendarLabels.Label placeholder, long refreshAt) {
+        mBegin = begin;
+        mEnd = end;
+        mLabel = label;
+        mCount = count;
+        mPlaceholder = placeholder;
+        this.refreshAt = refreshAt;
+    }
+
+    /**
+     * Loads the instances that are ongoing, ended recently enough to still be shown, or start in
+     * the next day, with their descriptions shortened by labels. Returns null if the provider
+     * isn't available.
+     */
+    static CalendarIndex query(ContentResolver resolver, CalendarLabels labels, long now) {
+        long begin = now - CalendarDisplay.SHOW_AFTER_END;
+        Uri.Builder builder = WearableCalendarContract.Instances.CONTENT_URI.buildUpon();
+        ContentUris.appendId(builder, begin);
+        ContentUris.appendId(builder, now + DateUtils.DAY_IN_MILLIS);
+
+        Cursor cursor = resolver.query(builder.build(), PROJECTION, SELECTION,
+                new String[] { Long.toString(begin) }, SORT_ORDER);
+        if (cursor == null) {
+            return null;
+        }
+        long[] begins = new long[MAX_INSTANCES];
+        long[] ends = new long[MAX_INSTANCES];
+        CalendarLabels.Label[] eventLabels = new CalendarLabels.Label[MAX_INSTANCES];
+        int count = 0;
+        long refreshAt = FaceClock.nextMidnight(TimeZone.getDefault(), now);
+        try {
+            while (cursor.moveToNext()) {
+                if (count == MAX_INSTANCES) {
+                    // Reload once the last kept instance starts and the ones after it matter.
+                    refreshAt = Math.min(refreshAt, begins[count - 1]);
+                    break;
+                }
+                begins[count] = cursor.getLong(0);
+                ends[count] = cursor.getLong(1);
+                String description = cursor.getString(2);
+                eventLabels[count] = description != null
+                        ? labels.get(description) : CalendarLabels.Label.NONE;
+                count++;
+            }
+        } finally {
+            cursor.close();
+        }
+        return new CalendarIndex(begins, ends, eventLabels, count, labels.placeholder(),
+                refreshAt);
+    }
+
+    /**
+     * Sets the inputs of display for now: the event started before now that ends last, and the
+     * first event to start after now (the shorter one if several start together). Returns the
+     * next time the choice changes, which is when another instance starts.
+     */
+    long select(long now, CalendarDisplay display) {
+        int from = -1, to = -1;
+        for (int i = 0; i < mCount; ++i) {
+            if (mBegin[i] < now) {
+                if (from == -1 || mEnd[i] > mEnd[from]) {
+                    from = i;
+                }
+            } else if (mBegin[i] > now) {
+                if (to == -1 || (mBegin[i] == mBegin[to] && mEnd[i] < mEnd[to])) {
+                    to = i;
+                }
+            }
+        }
+
+        display.latestFrom = from != -1 ? mEnd[from] : -1;
+        display.fromStart = from != -1 ? mBegin[from] : -1;
+        display.from = from != -1 ? mLabel[from] : CalendarLabels.Label.NONE;
+        display.earliestTo = to != -1 ? mBegin[to] : -1;
+        display.to = to != -1 ? mLabel[to] : CalendarLabels.Label.NONE;
+        display.placeholder = mPlaceholder;
+
+        // Instances are sorted by begin, so the next change is the first begin after now.
+        for (int i = 0; i < mCount; ++i) {
+            if (mBegin[i] >= now) {
+                return mBegin[i] == now ? now + 1 : mBegin[i];
+            }
+        }
+        return Long.MAX_VALUE;
+    }
+
+    /** Returns the size {@link #encode} writes, in bytes. */
+    int encodedSize() {
+        int size = 8 + labelSize(mPlaceholder) + 1;
+        for (int i = 0; i < mCount; ++i) {
+            size += 8 + 8 + labelSize(mLabel[i]);
+        }
+        return size;
+    }
+
+    /**
+     * Writes the index at the buffer's position, labels and their widths included, so that it
+     * can be read back without querying or measuring anything. The format is in
+     * {@link WarmStart}.
+     */
+    void encode(ByteBuffer out) {
+        out.putLong(refreshAt);
+        putLabel(out, mPlaceholder);
+        out.put((byte) mCount);
+        for (int i = 0; i < mCount; ++i) {
+            out.putLong(mBegin[i]);
+            out.putLong(mEnd[i]);
+            putLabel(out, mLabel[i]);
+        }
+    }
+
+    /**
+     * Reads an index written by {@link #encode}. Returns null if it's malformed, including if a
+     * label is longer than the face can draw.
+     */
+    static CalendarIndex decode(ByteBuffer in) {
+        try {
+            long refreshAt = in.getLong();
+            CalendarLabels.Label placeholder = getLabel(in);
+            if (placeholder == null) {
+                return null;
+            }
+            int count = in.get() & 0xff;
+            if (count > MAX_INSTANCES) {
+                return null;
+            }
+            long[] begins = new long[MAX_INSTANCES];
+            long[] ends = new long[MAX_INSTANCES];
+            CalendarLabels.Label[] labels = new CalendarLabels.Label[MAX_INSTANCES];
+            for (int i = 0; i < count; ++i) {
+                begins[i] = in.getLong();
+                ends[i] = in.getLong();
+                labels[i] = getLabel(in);
+                if (labels[i] == null || i > 0 && begins[i] < begins[i - 1]) {
+                    return null;
+                }
+            }
+            return new CalendarIndex(begins, ends, labels, count, placeholder, refreshAt);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /* Labels are already cut to MAX_LABEL_LENGTH; this only keeps encode and decode agreeing. */
+    private static int labelLength(CalendarLabels.Label label) {
+        return Math.min(label.text.length(), CalendarLabels.MAX_LABEL_LENGTH);
+    }
+
+    private static int labelSize(CalendarLabels.Label label) {
+        return 1 + 2 * labelLength(label) + 4;
+    }
+
+    private static void putLabel(ByteBuffer out, CalendarLabels.Label label) {
+        int length = labelLength(label);
+        out.put((byte) length);
+        for (int i = 0; i < length; ++i) {
+            out.putChar(label.text.charAt(i));
+        }
+        out.putFloat(label.width);
+    }
+
+    /* Returns null for a label too long to draw. */
+    private static CalendarLabels.Label getLabel(ByteBuffer in) {
+        int length = in.get() & 0xff;
+        if (length > CalendarLabels.MAX_LABEL_LENGTH) {
+            return null;
+        }
+        char[] text = new char[length];
+        for (int i = 0; i < text.length; ++i) {
+            text[i] = in.getChar();
+        }
+        float width = in.getFloat();
+        return text.length == 0 ? CalendarLabels.Label.NONE
+                : new CalendarLabels.Label(new String(text), width);
+    }
+}
@@ -17,14 +17,12 @@
 package thjread.dilithium;
 
 import android.content.BroadcastReceiver;
-import android.content.ContentUris;
 import android.content.Context;
 import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
-import android.database.Cursor;
+import android.database.ContentObserver;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -36,6 +34,7 @@ import android.os.BatteryManager;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.support.wearable.provider.WearableCalendarContract;
 import android.support.wearable.watchface.CanvasWatchFaceService;
@@ -43,28 +42,33 @@ import android.support.wearable.watchface.WatchFaceStyle;
 import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.SurfaceHolder;
-import android.view.WindowInsets;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
 import com.google.android.gms.wearable.CapabilityApi;
 import com.google.android.gms.wearable.CapabilityInfo;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.MessageApi;
-import com.google.android.gms.wearable.MessageEvent;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Node;
 import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
-import java.util.Calendar;
+import java.util.Random;
 import java.util.Set;
 import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
-import android.provider.CalendarContract;
-
 /**
  * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
  * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
@@ -77,16 +81,52 @@ public class Dilithium extends CanvasWatchFaceService {
     private static final long INTERACTIVE_UPDATE_RATE_MS = TimeUnit.SECONDS.toMillis(1);
 
     /**
-     * Handler message id for updating the time periodically in interactive mode.
+     * Handler message id for the tick scheduler's wakeups.
      */
-    private static final int MSG_UPDATE_TIME = 0;
-    private static final int MSG_LOAD_CALENDAR = 1;
+    private static final int MSG_TICK = 0;
+
+    /* How long to wait to retry a failed calendar load, scaled by the power tier. */
+    private static final long CALENDAR_RETRY_MS = TimeUnit.MINUTES.toMillis(5);
+
+    /* Shared by all engines, so that re-creating an engine doesn't decode everything again. */
+    private ResourceCache mResourceCache;
+    private CalendarLabels mCalendarLabels;
+    private WarmStart mWarmStart;
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        mResourceCache = new ResourceCache(this);
+        mWarmStart = new WarmStart(new File(getFilesDir(), WarmStart.FILE_NAME));
+        mCalendarLabels = new CalendarLabels(CalendarLabels.parseDictionary(
+                getResources().getStringArray(R.array.calendar_abbreviations)),
+                new CalendarLabels.Measurer() {
+                    private Paint mPaint;
+
+                    // Called with the CalendarLabels lock held, from CalendarSync.
+                    @Override
+                    public float measure(String text) {
+                        if (mPaint == null) {
+                            mPaint = new Paint();
+                            mPaint.setTypeface(mResourceCache.getTypeface());
+                            mPaint.setTextSize(FaceLayout.CALENDAR_TEXT_SIZE);
+                        }
+                        return mPaint.measureText(text);
+                    }
+                });
+    }
 
     @Override
     public Engine onCreateEngine() {
         return new Engine();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        mResourceCache.trimMemory(level);
+    }
+
     private static class EngineHandler extends Handler {
         private final WeakReference<Dilithium.Engine> mWeakReference;
 
@@ -99,48 +139,80 @@ public class Dilithium extends CanvasWatchFaceService {
             Dilithium.Engine engine = mWeakReference.get();
             if (engine != null) {
                 switch (msg.what) {
-                    case MSG_UPDATE_TIME:
-                        engine.handleUpdateTimeMessage();
+                    case MSG_TICK:
+                        engine.mTicks.onWakeup(System.currentTimeMillis());
                         break;
                 }
             }
         }
     }
 
-    static boolean mConnected = true;
+    /*
+     * Inputs written from other threads and services, shared by all engines. Frames read one
+     * snapshot of them.
+     */
+    static final FaceInputStore mInputs = new FaceInputStore();
+
     public static class NodeListenerService extends WearableListenerService {
         private static final String TAG = "NodeListenerService";
 
         @Override
         public void onPeerDisconnected(Node peer) {
-            mConnected = false;
+            mInputs.setConnected(false);
         }
 
         @Override
         public void onPeerConnected(Node peer) {
-            mConnected = true;
+            mInputs.setConnected(true);
         }
     }
 
     private class Engine extends CanvasWatchFaceService.Engine implements GoogleApiClient.ConnectionCallbacks,
-            GoogleApiClient.OnConnectionFailedListener, MessageApi.MessageListener {
-        final Handler mUpdateTimeHandler = new EngineHandler(this);
+            GoogleApiClient.OnConnectionFailedListener, DataApi.DataListener,
+            TickScheduler.Host {
+        final Handler mTickHandler = new EngineHandler(this);
+        /* Every redraw and every piece of deferred work goes through here. */
+        final TickScheduler mTicks = new TickScheduler(this, INTERACTIVE_UPDATE_RATE_MS);
         boolean mRegisteredTimeZoneReceiver = false;
-        Bitmap mBackgroundBitmap;
-        Bitmap mBackgroundCalendarBitmap;
         Bitmap mBackgroundScaledBitmap;
         Bitmap mBackgroundCalendarScaledBitmap;
-        Bitmap mAmbientBitmap;
         Bitmap mAmbientScaledBitmap;
         Paint mBackgroundPaint;
-        Paint mTextPaint;
+        Paint mAmbientPaint;
+        Typeface mTypeface;
+        /* Null until LoadResourcesTask finishes; until then drawFirstFrame is used. */
+        FaceLayout mLayout;
+        GlyphAtlas mGlyphAtlas;
+        Paint mFirstFramePaint;
+        /* Reused every frame so that drawing the face doesn't allocate. */
+        final FaceFrame mFrame = new FaceFrame();
+        final AtlasTarget mAtlasTarget = new AtlasTarget();
+
+        /*
+         * Offscreen copy of the background and the slow-changing text, redrawn only when one of
+         * the inputs recorded in mRendered changes.
+         */
+        Bitmap mStaticLayerBitmap;
+        Canvas mStaticLayerCanvas;
+        final RenderedInputs mRendered = new RenderedInputs();
+
+        int mSurfaceWidth;
+        int mSurfaceHeight;
+
+        long mCreateTime;
+        boolean mFirstFrameDrawn;
+
         boolean mAmbient;
-        Calendar mCalendar;
+        FaceClock mClock;
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                invalidate();
+                mClock.setTimeZone(TimeZone.getDefault());
+                mRendered.invalidate();
+                // The index is reloaded at local midnight, which has moved.
+                long now = System.currentTimeMillis();
+                mTicks.schedule(TickScheduler.JOB_LOAD_CALENDAR, now, now);
+                mTicks.markDirty(now);
             }
         };
         int mTapCount;
@@ -148,25 +220,34 @@ public class Dilithium extends CanvasWatchFaceService {
         private GoogleApiClient mGoogleApiClient;
         boolean mApiConnected = false;
 
-        float mXOffset;
-        float mYOffset;
+        /* Set up in onCreate, from the thresholds in the resources. */
+        PowerPolicy mPower;
 
-        int mBatteryPercent;
         boolean mRegisteredBatteryReceiver = false;
         final BroadcastReceiver mBatteryReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
                 int level = intent.getIntExtra(BatteryManager.EXTRA_LEVEL, -1);
                 int scale = intent.getIntExtra(BatteryManager.EXTRA_SCALE, -1);
-                mBatteryPercent = (level*100) / scale;
-                invalidate();
+                int percent = (level*100) / scale;
+                boolean charging = intent.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+                long now = System.currentTimeMillis();
+                // Sticky, and sent for every change in voltage or temperature too.
+                boolean changed = mInputs.setBatteryPercent(percent);
+                if (mPower.update(percent, charging, now)) {
+                    applyPowerTier(now);
+                } else if (!changed) {
+                    return;
+                }
+                scheduleWeatherRequest();
+                if (!mRendered.showsBattery(percent)) {
+                    mTicks.markDirty(now);
+                }
             }
         };
 
         //https://developer.android.com/training/wearables/data-layer/events.html#Listen
 
-        float mTemp = 0;
-
         /**
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
          * disable anti-aliasing in ambient mode.
@@ -174,189 +255,106 @@ public class Dilithium extends CanvasWatchFaceService {
         boolean mLowBitAmbient;
         boolean mBurnInProtection;
 
-        boolean showCalendar = false;
-        String calendarFrom = "";
-        String calendarTo = "";
-        String calendarFromText = "";
-        String calendarToText = "";
+        final CalendarDisplay mCalendarDisplay = new CalendarDisplay();
 
-        long latestFrom; long earliestTo; long fromStart;
+        /* The published index the calendar labels were last picked from. */
+        CalendarIndex mCalendarIndex = CalendarIndex.EMPTY;
+        /* When mCalendarIndex has to be picked from again, and when it has to be reloaded. */
+        long mCalendarNextChange = Long.MAX_VALUE;
+        long mCalendarRefreshAt = Long.MAX_VALUE;
 
-        private void calendarUpdate() {
-            long begin = System.currentTimeMillis();
-
-            showCalendar = false;
-
-            calendarFromText = calendarToText = "";
-
-            if (latestFrom > begin - DateUtils.MINUTE_IN_MILLIS*15 && calendarFrom.length() > 0) {
-                showCalendar = true;
-                calendarFromText = calendarFrom;
-            }
-            if (earliestTo < begin + DateUtils.MINUTE_IN_MILLIS*30 &&
-                    fromStart < begin - DateUtils.MINUTE_IN_MILLIS*10 &&
-                    calendarTo.length() > 0) {
-                showCalendar = true;
-                calendarToText = calendarTo;
-            }
-
-            if (earliestTo < begin && !calendarTo.equals("")) {
-                calendarFromText = calendarTo;
-                calendarToText = "";
-            }
-
-            if (showCalendar) {
-                if (calendarFromText.equals("")) {
-                    calendarFromText = "  __";
-                } else if (calendarToText.equals("")) {
-                    calendarToText = "  __";
-                }
-            }
-        }
-
-        //TODO: https://developer.android.com/samples/WatchFace/Wearable/src/com.example.android.wearable.watchface/CalendarWatchFaceService.html
-        private class CalendarSync extends AsyncTask<Void, Void, Void> {
+        private class CalendarSync extends AsyncTask<Void, Void, CalendarIndex> {
             @Override
-            protected Void doInBackground(Void... voids) {
-                if (!mConnected) {
+            protected CalendarIndex doInBackground(Void... voids) {
+                if (!mInputs.get().connected) {
                     return null;
                 }
-                long begin = System.currentTimeMillis();
-                Uri.Builder builder =
-                        WearableCalendarContract.Instances.CONTENT_URI.buildUpon();
-                ContentUris.appendId(builder, begin);//TODO
-                ContentUris.appendId(builder, begin + DateUtils.DAY_IN_MILLIS);
-
-                final String[] INSTANCE_PROJECTION = new String[] {
-                        CalendarContract.Instances.EVENT_ID,      // 0
-                        CalendarContract.Instances.BEGIN,         // 1
-                        CalendarContract.Instances.END,          // 2
-                        CalendarContract.Instances.DESCRIPTION,   // 3
-                        CalendarContract.Instances.ALL_DAY      // 4
-                };
-                final Cursor cursor = getContentResolver().query(builder.build(),
-                        INSTANCE_PROJECTION, null, null, null);
-                //long fromEventID = -1, toEventID = -1;
-                latestFrom = -1; fromStart = -1;
-                earliestTo = -1; long toEnd = -1;
-                String toDescription = null;
-                String fromDescription = null;
-                while (cursor.moveToNext()) {
-                    long start = cursor.getLong(1);
-                    long end = cursor.getLong(2);
-                    String all_day = cursor.getString(4);
-                    if (start < begin && (end > latestFrom || latestFrom == -1) && !all_day.equals("1")) {
-                        //fromEventID = cursor.getLong(0);
-                        latestFrom = end;
-                        fromStart = start;
-                        fromDescription = cursor.getString(3);
-                    }
-                    if (start > begin && (start <= earliestTo || earliestTo == -1) && !all_day.equals("1")) {
-                        if (start < earliestTo || end < toEnd) {
-                            //toEventID = cursor.getLong(0);
-                            earliestTo = start;
-                            toEnd = end;
-                            toDescription = cursor.getString(3);
-                        }
-                    }
-                }
-
-                cursor.close();
-
-                if (fromDescription != null) {
-                    calendarFrom = fromDescription;
-                    String[] arr = calendarFrom.split(" ");
-                    calendarFrom = "";
-                    for (int i = 0; i < arr.length; ++i) {
-                        if (calendarFrom.length() + arr[i].length() <= 4) {
-                            if (i == 0) {
-                                calendarFrom = arr[i];
-                            } else {
-                                calendarFrom += " " + arr[i];
-                            }
-                        } else {
-                            break;
-                        }
-                    }
-                    if (!calendarFrom.equals("")) {
-                        for (int i = 0; i < 5 - calendarFrom.length(); ++i) {
-                            calendarFrom = " " + calendarFrom;
-                        }
-                    }
-                    if (fromDescription.equals("Study Room")) {
-                        calendarFrom = " Free";
-                    } else if (fromDescription.equals("Sports Hall")) {
-                        calendarFrom = " Sprt";
-                    }
-                } else {
-                    calendarFrom = "";
-                }
-
-                if (toDescription != null) {
-                    calendarTo = toDescription;
-                    String[] arr = calendarTo.split(" ");
-                    calendarTo = "";
-                    for (int i = 0; i < arr.length; ++i) {
-                        if (calendarTo.length() + arr[i].length() <= 4) {
-                            if (i == 0) {
-                                calendarTo = arr[i];
-                            } else {
-                                calendarTo += " " + arr[i];
-                            }
-                        } else {
-                            break;
-                        }
-                    }
-                    if (!calendarTo.equals("")) {
-                        for (int i = 0; i < 5 - calendarTo.length(); ++i) {
-                            calendarTo = " " + calendarTo;
-                        }
-                    }
-                    if (toDescription.equals("Study Room")) {
-                        calendarTo = " Free";
-                    } else if (toDescription.equals("Sports Hall")) {
-                        calendarTo = " Sprt";
-                    }
-                } else {
-                    calendarTo = "";
+                CalendarIndex index = CalendarIndex.query(getContentResolver(),
+                        mCalendarLabels, System.currentTimeMillis());
+                if (index != null) {
+                    mInputs.setCalendar(index);
                 }
-
-                return null;
+                return index;
             }
 
             @Override
-            protected void onPostExecute(Void data) {
-                invalidate();
+            protected void onPostExecute(CalendarIndex index) {
+                mLoadCalendarTask = null;
+                long now = System.currentTimeMillis();
+                if (index == null) {
+                    mCalendarRefreshAt = now + CALENDAR_RETRY_MS * mPower.refreshScale();
+                    return;
+                }
+                saveWarmStart();
+                if (updateCalendar(now)) {
+                    mTicks.markDirty(now);
+                }
             }
         }
 
-        private AsyncTask<Void, Void, Void> mLoadCalendarTask;
+        private AsyncTask<Void, Void, CalendarIndex> mLoadCalendarTask;
 
-        /* Handler to load the calendar once a minute in interactive mode. */
-        final Handler mLoadCalendarHandler = new Handler() {
+        /* Calendar sync notifies once per changed row, so the reload waits for things to settle. */
+        final ContentObserver mCalendarObserver = new ContentObserver(mTickHandler) {
             @Override
-            public void handleMessage(Message message) {
-                switch (message.what) {
-                    case MSG_LOAD_CALENDAR:
-                        cancelLoadCalendarTask();
-                        mLoadCalendarTask = new CalendarSync();
-                        mLoadCalendarTask.execute();
-                        break;
-                }
+            public void onChange(boolean selfChange) {
+                long now = System.currentTimeMillis();
+                mTicks.schedule(TickScheduler.JOB_LOAD_CALENDAR,
+                        now + mPower.calendarChangeDelay(), now);
             }
         };
+        boolean mRegisteredCalendarObserver = false;
 
         private void cancelLoadCalendarTask() {
             if (mLoadCalendarTask != null) {
                 mLoadCalendarTask.cancel(true);
+                mLoadCalendarTask = null;
             }
         }
 
+        /**
+         * Brings the calendar display up to now: picks the current and next event again once one
+         * of the indexed instances starts, moves along the display timeline, and reloads the
+         * index when it goes stale. Then schedules the next call for the next of those instants,
+         * or leaves it to onTimeTick in ambient mode. Returns whether the display changed.
+         */
+        private boolean updateCalendar(long now) {
+            CalendarIndex index = mInputs.get().calendar;
+            if (index != mCalendarIndex) {
+                mCalendarIndex = index;
+                mCalendarRefreshAt = index.refreshAt;
+                mCalendarNextChange = now;
+            }
+            if (now >= mCalendarRefreshAt && mLoadCalendarTask == null) {
+                mCalendarRefreshAt = Long.MAX_VALUE;
+                mTicks.schedule(TickScheduler.JOB_LOAD_CALENDAR, now, now);
+            }
+            boolean changed;
+            if (now >= mCalendarNextChange) {
+                CalendarDisplay.State previous = mCalendarDisplay.state;
+                mCalendarNextChange = mCalendarIndex.select(now, mCalendarDisplay);
+                mCalendarDisplay.compile(now);
+                changed = !mCalendarDisplay.state.sameAs(previous);
+            } else {
+                changed = mCalendarDisplay.advance(now);
+            }
+
+            if (shouldTimerBeRunning()) {
+                long next = Math.min(mCalendarDisplay.nextTransition(),
+                        Math.min(mCalendarNextChange, mCalendarRefreshAt));
+                mTicks.schedule(TickScheduler.JOB_CALENDAR_TRANSITION, next, now);
+            } else {
+                mTicks.cancel(TickScheduler.JOB_CALENDAR_TRANSITION, now);
+            }
+            return changed;
+        }
+
         private final static String TAG = "thjread.watchface";
 
         @Override
         public void onCreate(SurfaceHolder holder) {
             super.onCreate(holder);
+            mCreateTime = SystemClock.elapsedRealtime();
 
             setWatchFaceStyle(new WatchFaceStyle.Builder(Dilithium.this)
                     .setCardPeekMode(WatchFaceStyle.PEEK_MODE_VARIABLE)
@@ -365,24 +363,57 @@ public class Dilithium extends CanvasWatchFaceService {
                     .setShowSystemUiTime(false)
                     .setAcceptsTapEvents(true)
                     .build());
-            Resources resources = Dilithium.this.getResources();
-            mYOffset = resources.getDimension(R.dimen.digital_y_offset);
+            mBackgroundPaint = new Paint();
+            mBackgroundPaint.setColor(Color.BLACK);
 
-            mBackgroundBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.background1);
-            mBackgroundCalendarBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.background2);
+            mAmbientPaint = new Paint();
+            mAmbientPaint.setColor(Color.WHITE);
 
-            mAmbientBitmap = BitmapFactory.decodeResource(getResources(), R.drawable.ambient1);
+            // The bitmaps and typeface load in the background; this draws the time meanwhile.
+            mFirstFramePaint = new Paint();
+            mFirstFramePaint.setColor(Color.WHITE);
+            mFirstFramePaint.setTextAlign(Paint.Align.CENTER);
+            mFirstFramePaint.setAntiAlias(true);
 
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(Color.BLACK);
+            mClock = new FaceClock(TimeZone.getDefault());
 
-            mTextPaint = new Paint();
-            mTextPaint = createTextPaint(Color.BLACK);
+            Resources resources = getResources();
+            mPower = new PowerPolicy(resources.getInteger(R.integer.power_saver_battery),
+                    resources.getInteger(R.integer.power_critical_battery),
+                    resources.getInteger(R.integer.power_hysteresis));
 
-            mCalendar = Calendar.getInstance();
+            // After a restart, the first frame shows the last forecast and calendar rather than
+            // nothing while they are fetched again.
+            long restoreStart = System.nanoTime();
+            if (mWarmStart.restore(mInputs)) {
+                Log.d(TAG, "Warm start restored in "
+                        + (System.nanoTime() - restoreStart) / 1000 + " us");
+            }
+            WeatherPayload weather = mInputs.get().weather;
+            if (weather != null) {
+                mWeatherRefresh.onData(weather);
+            }
+
+            long now = System.currentTimeMillis();
+            mTicks.schedule(TickScheduler.JOB_LOAD_CALENDAR, now, now);
+        }
 
-            mLoadCalendarHandler.sendEmptyMessage(MSG_LOAD_CALENDAR);
+        /* Writes the warm start snapshot off the main thread, if it changed. */
+        private void saveWarmStart() {
+            AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        mWarmStart.save(mInputs.get());
+                    } catch (IOException e) {
+                        Log.w(TAG, "Couldn't save the warm start snapshot", e);
+                    }
+                }
+            });
+        }
 
+        /* Built when the face first becomes visible rather than in onCreate. */
+        private void createGoogleApiClient() {
             mGoogleApiClient = new GoogleApiClient.Builder(Dilithium.this)
                     .addConnectionCallbacks(this)
                     .addOnConnectionFailedListener(this)
@@ -394,10 +425,36 @@ public class Dilithium extends CanvasWatchFaceService {
         private static final String WEATHER_CAPABILITY_NAME = "weather_data";
         private static final String WEATHER_PATH = "/weather_data";
 
+        /* Matches the phone's /weather_data DataItem, whichever node it is. */
+        private final Uri mWeatherUri = new Uri.Builder()
+                .scheme(PutDataRequest.WEAR_URI_SCHEME).path(WEATHER_PATH).build();
+
+        /* Decides when to ask the phone for a forecast it hasn't pushed. */
+        final RefreshScheduler mWeatherRefresh = new RefreshScheduler(
+                RefreshScheduler.GRACE_MS, Clock.SYSTEM, new Random());
+        /* Requests wait until the DataItem has been read and the phone looked for. */
+        private boolean mWeatherItemRead = false;
+        private boolean mWeatherCapabilityKnown = false;
+
         @Override
         public void onConnected(Bundle connectionHint) {
             mApiConnected = true;
-            Wearable.MessageApi.addListener(mGoogleApiClient, this);
+            Wearable.DataApi.addListener(mGoogleApiClient, this);
+
+            // The phone pushes the forecast as it changes; pick up the latest one straight away.
+            Wearable.DataApi.getDataItems(mGoogleApiClient, mWeatherUri).setResultCallback(
+                    new ResultCallback<DataItemBuffer>() {
+                        @Override
+                        public void onResult(@NonNull DataItemBuffer items) {
+                            for (int i = 0; i < items.getCount(); ++i) {
+                                publishWeather(items.get(i).getData());
+                            }
+                            items.release();
+                            mWeatherItemRead = true;
+                            scheduleWeatherRequest();
+                        }
+                    }
+            );
 
             Wearable.CapabilityApi.getCapability(mGoogleApiClient, WEATHER_CAPABILITY_NAME,
                     CapabilityApi.FILTER_REACHABLE).setResultCallback(
@@ -429,8 +486,9 @@ public class Dilithium extends CanvasWatchFaceService {
             Set<Node> connectedNodes = capabilityInfo.getNodes();
 
             mWeatherNodeId = pickBestNodeId(connectedNodes);
+            mWeatherCapabilityKnown = true;
 
-            backgroundUpdate();
+            scheduleWeatherRequest();
         }
 
         private String pickBestNodeId(Set<Node> nodes) {
@@ -446,10 +504,32 @@ public class Dilithium extends CanvasWatchFaceService {
         }
 
         @Override
-        public void onMessageReceived(MessageEvent messageEvent) {
-            byte[] d = messageEvent.getData();
-            mTemp = ByteBuffer.wrap(d).getFloat();
-            Log.d(TAG, "Temperature: " + mTemp);
+        public void onDataChanged(DataEventBuffer dataEvents) {
+            for (DataEvent event : dataEvents) {
+                if (event.getType() == DataEvent.TYPE_CHANGED
+                        && WEATHER_PATH.equals(event.getDataItem().getUri().getPath())) {
+                    publishWeather(event.getDataItem().getData());
+                }
+            }
+        }
+
+        /* Decodes and publishes a forecast from the phone. Returns false if it's unreadable. */
+        private boolean publishWeather(byte[] data) {
+            WeatherPayload weather = new WeatherPayload();
+            if (data == null || !weather.decode(ByteBuffer.wrap(data))) {
+                Log.w(TAG, "Ignoring unreadable weather data");
+                return false;
+            }
+            mInputs.setWeather(weather);
+            saveWarmStart();
+            mWeatherRefresh.onData(weather);
+            scheduleWeatherRequest();
+            long now = System.currentTimeMillis();
+            if (!mRendered.showsTemperature(weather.temperatureAt(now))) {
+                mTicks.markDirty(now);
+            }
+            Log.d(TAG, "Temperature: " + weather.temperature + ", " + weather.hourCount + " hours");
+            return true;
         }
 
         public void onConnectionSuspended(int cause) {
@@ -463,60 +543,236 @@ public class Dilithium extends CanvasWatchFaceService {
         @Override
         public void onSurfaceChanged(
                 SurfaceHolder holder, int format, int width, int height) {
-            if (mBackgroundScaledBitmap == null
-                    || mBackgroundScaledBitmap.getWidth() != width
-                    || mBackgroundScaledBitmap.getHeight() != height) {
-                mBackgroundScaledBitmap = Bitmap.createScaledBitmap(mBackgroundBitmap,
-                        width, height, true /* filter */);
-                mBackgroundCalendarScaledBitmap = Bitmap.createScaledBitmap(mBackgroundCalendarBitmap,
-                        width, height, true /* filter */);
-                mAmbientScaledBitmap = Bitmap.createScaledBitmap(mAmbientBitmap,
-                        width, height, true /* filter */);
+            if (width != mSurfaceWidth || height != mSurfaceHeight) {
+                mSurfaceWidth = width;
+                mSurfaceHeight = height;
+                loadResources();
             }
             super.onSurfaceChanged(holder, format, width, height);
         }
 
+        private LoadResourcesTask mLoadResourcesTask;
+        private LoadCalendarBackgroundTask mLoadCalendarBackgroundTask;
+
+        private void loadResources() {
+            if (mLoadResourcesTask != null) {
+                mLoadResourcesTask.cancel(false);
+            }
+            if (mLoadCalendarBackgroundTask != null) {
+                mLoadCalendarBackgroundTask.cancel(false);
+                mLoadCalendarBackgroundTask = null;
+            }
+            mLoadResourcesTask = new LoadResourcesTask(mSurfaceWidth, mSurfaceHeight,
+                    mLowBitAmbient, mBurnInProtection);
+            mLoadResourcesTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+
+        /**
+         * Decodes the backgrounds, loads the typeface and renders the glyph atlas for one surface
+         * size off the main thread, then swaps them into the engine. The calendar background is
+         * left to {@link LoadCalendarBackgroundTask}, as most of the time it isn't shown.
+         */
+        private class LoadResourcesTask extends AsyncTask<Void, Void, Void> {
+            final int mWidth;
+            final int mHeight;
+            final boolean mLowBit;
+            final boolean mBurnIn;
+
+            Typeface mTypeface;
+            Bitmap mBackground;
+            Bitmap mAmbientBackground;
+            FaceLayout mLayout;
+            GlyphAtlas mGlyphAtlas;
+
+            LoadResourcesTask(int width, int height, boolean lowBit, boolean burnIn) {
+                mWidth = width;
+                mHeight = height;
+                mLowBit = lowBit;
+                mBurnIn = burnIn;
+            }
+
+            @Override
+            protected Void doInBackground(Void... voids) {
+                mTypeface = mResourceCache.getTypeface();
+                mBackground = mResourceCache.acquireBitmap(R.drawable.background1,
+                        mWidth, mHeight, Bitmap.Config.RGB_565);
+                // The ambient art is white on black, so only its brightness is kept.
+                mAmbientBackground = mResourceCache.acquireBitmap(R.drawable.ambient1,
+                        mWidth, mHeight, Bitmap.Config.ALPHA_8);
+                mGlyphAtlas = new GlyphAtlas();
+                mLayout = new FaceLayout();
+                mLayout.resolve(mWidth, mTypeface, mLowBit, mBurnIn, mGlyphAtlas);
+                return null;
+            }
+
+            @Override
+            protected void onPostExecute(Void data) {
+                mLoadResourcesTask = null;
+                releaseBitmaps();
+                if (Engine.this.mGlyphAtlas != null) {
+                    Engine.this.mGlyphAtlas.clear();
+                }
+                mBackgroundScaledBitmap = mBackground;
+                mAmbientScaledBitmap = mAmbientBackground;
+                Engine.this.mTypeface = mTypeface;
+                Engine.this.mLayout = mLayout;
+                Engine.this.mGlyphAtlas = mGlyphAtlas;
+                if (mLowBit != mLowBitAmbient || mBurnIn != mBurnInProtection) {
+                    resolveLayout();
+                }
+                mRendered.invalidate();
+                Log.d(TAG, "Resources loaded " + (SystemClock.elapsedRealtime() - mCreateTime)
+                        + " ms after onCreate");
+                mTicks.redrawNow(System.currentTimeMillis());
+            }
+
+            @Override
+            protected void onCancelled(Void data) {
+                mResourceCache.release(mBackground);
+                mResourceCache.release(mAmbientBackground);
+                if (mGlyphAtlas != null) {
+                    mGlyphAtlas.clear();
+                }
+            }
+        }
+
+        /**
+         * Decodes the calendar background the first time it is needed.
+         */
+        private class LoadCalendarBackgroundTask extends AsyncTask<Void, Void, Bitmap> {
+            final int mWidth;
+            final int mHeight;
+
+            LoadCalendarBackgroundTask(int width, int height) {
+                mWidth = width;
+                mHeight = height;
+            }
+
+            @Override
+            protected Bitmap doInBackground(Void... voids) {
+                return mResourceCache.acquireBitmap(R.drawable.background2, mWidth, mHeight,
+                        Bitmap.Config.RGB_565);
+            }
+
+            @Override
+            protected void onPostExecute(Bitmap bitmap) {
+                mLoadCalendarBackgroundTask = null;
+                mResourceCache.release(mBackgroundCalendarScaledBitmap);
+                mBackgroundCalendarScaledBitmap = bitmap;
+                mRendered.invalidate();
+                mTicks.markDirty(System.currentTimeMillis());
+            }
+
+            @Override
+            protected void onCancelled(Bitmap bitmap) {
+                mResourceCache.release(bitmap);
+            }
+        }
+
+        private void loadCalendarBackground() {
+            if (mLoadCalendarBackgroundTask == null) {
+                mLoadCalendarBackgroundTask = new LoadCalendarBackgroundTask(mSurfaceWidth,
+                        mSurfaceHeight);
+                mLoadCalendarBackgroundTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+            }
+        }
+
+        private void resolveLayout() {
+            mGlyphAtlas.clear();
+            mLayout.resolve(mSurfaceWidth, mTypeface, mLowBitAmbient, mBurnInProtection,
+                    mGlyphAtlas);
+        }
+
         @Override
         public void onDestroy() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            mLoadCalendarHandler.removeMessages(MSG_LOAD_CALENDAR);
+            mTickHandler.removeMessages(MSG_TICK);
+            if (mLoadResourcesTask != null) {
+                mLoadResourcesTask.cancel(false);
+            }
+            if (mLoadCalendarBackgroundTask != null) {
+                mLoadCalendarBackgroundTask.cancel(false);
+            }
+            if (mGlyphAtlas != null) {
+                mGlyphAtlas.clear();
+            }
+            releaseBitmaps();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int textColor) {
-            Paint paint = new Paint();
-            paint.setColor(textColor);
-            Typeface font = Typeface.createFromAsset(getAssets(), "FINALOLD.TTF");
-            paint.setTypeface(font);
-            paint.setAntiAlias(true);
-            return paint;
+        @Override
+        protected void dump(String prefix, FileDescriptor fd, PrintWriter out, String[] args) {
+            super.dump(prefix, fd, out, args);
+            out.println(prefix + "Bitmap memory:");
+            dumpBitmap(prefix + "  ", out, "background", mBackgroundScaledBitmap);
+            dumpBitmap(prefix + "  ", out, "calendar background", mBackgroundCalendarScaledBitmap);
+            dumpBitmap(prefix + "  ", out, "ambient", mAmbientScaledBitmap);
+            dumpBitmap(prefix + "  ", out, "static layer", mStaticLayerBitmap);
+            out.println(prefix + "  glyph atlas: "
+                    + (mGlyphAtlas != null ? mGlyphAtlas.byteCount() : 0) + " bytes");
+            mResourceCache.dump(prefix + "  ", out);
+            out.println(prefix + "Weather requests failed in a row: "
+                    + mWeatherRefresh.failures());
+            long now = System.currentTimeMillis();
+            for (int tier = 0; tier < PowerPolicy.TIER_COUNT; ++tier) {
+                out.println(prefix + "Power tier " + tier + (tier == mPower.tier() ? " (now)" : "")
+                        + ": " + mPower.timeIn(tier, now) / DateUtils.MINUTE_IN_MILLIS + " min, "
+                        + Math.round(mPower.framesPerHour(tier, now)) + " frames/h, "
+                        + Math.round(mPower.sendsPerHour(tier, now)) + " sends/h");
+            }
+            out.println(prefix + "Last minute: "
+                    + mTicks.lastMinute(TickScheduler.COUNT_WAKEUPS, now) + " wakeups, "
+                    + mTicks.lastMinute(TickScheduler.COUNT_REDRAWS, now) + " redraws, "
+                    + mTicks.lastMinute(TickScheduler.COUNT_DIRTY, now) + " redraw requests and "
+                    + mTicks.lastMinute(TickScheduler.COUNT_JOBS, now) + " jobs coalesced");
+        }
+
+        private void dumpBitmap(String prefix, PrintWriter out, String name, Bitmap bitmap) {
+            if (bitmap == null) {
+                out.println(prefix + name + ": none");
+            } else {
+                out.println(prefix + name + ": " + bitmap.getWidth() + "x" + bitmap.getHeight()
+                        + " " + bitmap.getConfig() + ", " + bitmap.getByteCount() + " bytes");
+            }
+        }
+
+        private void releaseBitmaps() {
+            mResourceCache.release(mBackgroundScaledBitmap);
+            mResourceCache.release(mBackgroundCalendarScaledBitmap);
+            mResourceCache.release(mAmbientScaledBitmap);
+            mBackgroundScaledBitmap = mBackgroundCalendarScaledBitmap = mAmbientScaledBitmap = null;
         }
 
         @Override
         public void onVisibilityChanged(boolean visible) {
             super.onVisibilityChanged(visible);
 
+            long now = System.currentTimeMillis();
             if (visible) {
                 registerReceiver();
-                mLoadCalendarHandler.sendEmptyMessage(MSG_LOAD_CALENDAR);
+                mTicks.schedule(TickScheduler.JOB_LOAD_CALENDAR, now, now);
                 // Update time zone in case it changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                if (mGoogleApiClient != null) {
-                    mGoogleApiClient.connect();
+                mClock.setTimeZone(TimeZone.getDefault());
+                mRendered.invalidate();
+                if (mGoogleApiClient == null) {
+                    createGoogleApiClient();
                 }
-                backgroundUpdate();
+                mGoogleApiClient.connect();
             } else {
                 unregisterReceiver();
-                mLoadCalendarHandler.removeMessages(MSG_LOAD_CALENDAR);
+                mTicks.cancel(TickScheduler.JOB_LOAD_CALENDAR, now);
                 if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-                    Wearable.MessageApi.removeListener(mGoogleApiClient, this);
+                    Wearable.DataApi.removeListener(mGoogleApiClient, this);
                     mGoogleApiClient.disconnect();
                 }
+                mApiConnected = false;
+                mWeatherItemRead = false;
+                mWeatherCapabilityKnown = false;
+                mTicks.cancel(TickScheduler.JOB_REQUEST_WEATHER, now);
             }
 
-            // Whether the timer should be running depends on whether we're visible (as well as
-            // whether we're in ambient mode), so we may need to start or stop the timer.
-            updateTimer();
+            // The tick mode depends on whether we're visible (as well as whether we're in ambient
+            // mode), so we may need to start or stop ticking.
+            updateTicks();
         }
 
         private void registerReceiver() {
@@ -530,6 +786,11 @@ public class Dilithium extends CanvasWatchFaceService {
                 IntentFilter filter = new IntentFilter(Intent.ACTION_BATTERY_CHANGED);
                 Dilithium.this.registerReceiver(mBatteryReceiver, filter);
             }
+            if (!mRegisteredCalendarObserver) {
+                mRegisteredCalendarObserver = true;
+                getContentResolver().registerContentObserver(
+                        WearableCalendarContract.Instances.CONTENT_URI, true, mCalendarObserver);
+            }
         }
 
         private void unregisterReceiver() {
@@ -541,21 +802,10 @@ public class Dilithium extends CanvasWatchFaceService {
                 mRegisteredBatteryReceiver = false;
                 Dilithium.this.unregisterReceiver(mBatteryReceiver);
             }
-        }
-
-        @Override
-        public void onApplyWindowInsets(WindowInsets insets) {
-            super.onApplyWindowInsets(insets);
-
-            // Load resources that have alternate values for round watches.
-            Resources resources = Dilithium.this.getResources();
-            boolean isRound = insets.isRound();
-            mXOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_x_offset_round : R.dimen.digital_x_offset);
-            float textSize = resources.getDimension(isRound
-                    ? R.dimen.digital_text_size_round : R.dimen.digital_text_size);
-
-            mTextPaint.setTextSize(textSize);
+            if (mRegisteredCalendarObserver) {
+                mRegisteredCalendarObserver = false;
+                getContentResolver().unregisterContentObserver(mCalendarObserver);
+            }
         }
 
         @Override
@@ -563,13 +813,18 @@ public class Dilithium extends CanvasWatchFaceService {
             super.onPropertiesChanged(properties);
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
             mBurnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
+            mRendered.invalidate();
+            if (mLayout != null) {
+                resolveLayout();
+            }
         }
 
         @Override
         public void onTimeTick() {
             super.onTimeTick();
-            checkBackgroundUpdate();
-            invalidate();
+            long now = System.currentTimeMillis();
+            updateCalendar(now);
+            mTicks.onTimeTick(now);
         }
 
         @Override
@@ -577,15 +832,13 @@ public class Dilithium extends CanvasWatchFaceService {
             super.onAmbientModeChanged(inAmbientMode);
             if (mAmbient != inAmbientMode) {
                 mAmbient = inAmbientMode;
-                if (mLowBitAmbient) {
-                    mTextPaint.setAntiAlias(!inAmbientMode);
-                }
+                scheduleWeatherRequest();
             }
 
-            invalidate();
-            // Whether the timer should be running depends on whether we're visible (as well as
-            // whether we're in ambient mode), so we may need to start or stop the timer.
-            updateTimer();
+            mTicks.redrawNow(System.currentTimeMillis());
+            // The tick mode depends on whether we're visible (as well as whether we're in ambient
+            // mode), so we may need to start or stop ticking.
+            updateTicks();
         }
 
         /**
@@ -607,181 +860,248 @@ public class Dilithium extends CanvasWatchFaceService {
                     mTapCount++;
                     mBackgroundPaint.setColor(resources.getColor(mTapCount % 2 == 0 ?
                             R.color.background : R.color.background2));
+                    mTicks.redrawNow(System.currentTimeMillis());
                     break;
             }
-            invalidate();
         }
 
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            mCalendar.setTimeInMillis(System.currentTimeMillis());
-            float width = bounds.width();
+            mPower.onFrame(System.currentTimeMillis());
+            if (mLayout == null) {
+                drawFirstFrame(canvas, bounds);
+            } else {
+                drawFace(canvas, bounds);
+            }
+
+            if (!mFirstFrameDrawn) {
+                mFirstFrameDrawn = true;
+                Log.d(TAG, "First frame drawn " + (SystemClock.elapsedRealtime() - mCreateTime)
+                        + " ms after onCreate");
+            }
+        }
 
-            calendarUpdate();
+        /**
+         * Draws the time in the system font on a plain background, for the frames before
+         * LoadResourcesTask has finished.
+         */
+        private void drawFirstFrame(Canvas canvas, Rect bounds) {
+            mClock.setTime(System.currentTimeMillis());
+            mFrame.setTime(mClock, showSeconds());
+            FaceText time = mFrame.text(FaceLayout.FIELD_TIME);
+            canvas.drawColor(Color.BLACK);
+            mFirstFramePaint.setTextSize(bounds.width() / 360.0f * 60.0f);
+            canvas.drawText(time.chars, 0, time.length, bounds.exactCenterX(),
+                    bounds.height() / 360.0f * 189.0f, mFirstFramePaint);
+        }
+
+        private void drawFace(Canvas canvas, Rect bounds) {
+            long now = System.currentTimeMillis();
+            mClock.setTime(now);
+            // One snapshot for the whole frame.
+            FaceInputs inputs = mInputs.get();
+
+            if (mStaticLayerBitmap == null
+                    || mStaticLayerBitmap.getWidth() != bounds.width()
+                    || mStaticLayerBitmap.getHeight() != bounds.height()) {
+                // Always opaque, as the backgrounds are.
+                mStaticLayerBitmap = Bitmap.createBitmap(bounds.width(), bounds.height(),
+                        Bitmap.Config.RGB_565);
+                mStaticLayerCanvas = new Canvas(mStaticLayerBitmap);
+                mRendered.invalidate();
+            }
+            if (isStaticLayerStale(now, inputs)) {
+                drawStaticLayer(mStaticLayerCanvas, inputs);
+            }
+            canvas.drawBitmap(mStaticLayerBitmap, 0, 0, null);
+
+            mFrame.setTime(mClock, showSeconds());
+            drawFields(canvas, mLayout.timeFields, frameState(inputs));
+        }
+
+        /* Seconds would go stale between ambient and power saver ticks. */
+        private boolean showSeconds() {
+            return !mAmbient && mPower.showsSeconds();
+        }
+
+        /** Returns the {@code FaceLayout.STATE_*} bits for the current frame. */
+        private int frameState(FaceInputs inputs) {
+            return FaceFrame.state(mAmbient, mLowBitAmbient || mBurnInProtection,
+                    mPower.flatBackground(), inputs.batteryPercent, inputs.connected,
+                    mCalendarDisplay.state.showCalendar);
+        }
+
+        private void drawFields(Canvas canvas, FaceLayout.Placed[] fields, int state) {
+            mAtlasTarget.canvas = canvas;
+            mFrame.draw(fields, state, mAtlasTarget);
+        }
+
+        /* Blits the fields of a frame onto a canvas through the glyph atlas. */
+        private final class AtlasTarget implements FaceFrame.Target {
+            Canvas canvas;
+
+            @Override
+            public void drawField(FaceLayout.Placed field, FaceText text, float x, int state) {
+                mGlyphAtlas.drawText(canvas, text.chars, 0, text.length, x, field.y,
+                        field.paint(state));
+            }
+        }
+
+        /**
+         * Returns whether any input of the static layer changed since it was last drawn, and
+         * records the current inputs if so.
+         */
+        private boolean isStaticLayerStale(long now, FaceInputs inputs) {
+            return mRendered.update(now / DateUtils.MINUTE_IN_MILLIS, inputs.batteryPercent,
+                    RenderedInputs.round(inputs.temperatureAt(now)), inputs.connected,
+                    mCalendarDisplay.state, mBackgroundPaint.getColor(), mAmbient);
+        }
+
+        /**
+         * Draws the background and everything except the time. These only change once a minute
+         * at most, so they are cached in {@link #mStaticLayerBitmap} between frames.
+         */
+        private void drawStaticLayer(Canvas canvas, FaceInputs inputs) {
+            CalendarDisplay.State calendar = mCalendarDisplay.state;
 
             // Draw the background.
-            if (mAmbient && !showCalendar) {
+            if (mAmbient && !calendar.showCalendar) {
                 canvas.drawColor(Color.BLACK);
             } else if (mAmbient) {
-                canvas.drawBitmap(mAmbientScaledBitmap, 0, 0, mBackgroundPaint);
-            }else if (!showCalendar){
+                canvas.drawColor(Color.BLACK);
+                canvas.drawBitmap(mAmbientScaledBitmap, 0, 0, mAmbientPaint);
+            } else if (mPower.flatBackground()) {
+                canvas.drawColor(mBackgroundPaint.getColor());
+            } else if (!calendar.showCalendar){
+                canvas.drawBitmap(mBackgroundScaledBitmap, 0, 0, mBackgroundPaint);
+            } else if (mBackgroundCalendarScaledBitmap == null) {
+                loadCalendarBackground();
                 canvas.drawBitmap(mBackgroundScaledBitmap, 0, 0, mBackgroundPaint);
             } else {
                 canvas.drawBitmap(mBackgroundCalendarScaledBitmap, 0, 0, mBackgroundPaint);
             }
 
-            String text = mAmbient
-                    ? String.format("%02d:%02d", mCalendar.get(Calendar.HOUR_OF_DAY),
-                    mCalendar.get(Calendar.MINUTE))
-                    : String.format("%02d:%02d:%02d", mCalendar.get(Calendar.HOUR_OF_DAY),
-                        mCalendar.get(Calendar.MINUTE),
-                        mCalendar.get(Calendar.SECOND));
-            mXOffset = width/360.0f* 101f;
-            mYOffset = width/360.0f* 189f;
-            mTextPaint.setTextSize(width/360.0f*89.0f);
-            mTextPaint.setColor(mAmbient ? Color.WHITE : Color.BLACK);
-            if (mAmbient && mBurnInProtection) {
-                mTextPaint.setStyle(Paint.Style.STROKE);
-                mTextPaint.setStrokeWidth(1);
-            } else {
-                mTextPaint.setStyle(Paint.Style.FILL);
-                mTextPaint.setStrokeWidth(0);
-            }
-            canvas.drawText(text, mXOffset, mYOffset, mTextPaint);
-
-            text = String.format("%04d%02d.%02d", mCalendar.get(Calendar.YEAR),
-                    mCalendar.get(Calendar.MONTH) + 1,
-                    mCalendar.get(Calendar.DAY_OF_MONTH));
-            mXOffset = width / 360.0f * 109f;
-            mYOffset = width / 360.0f * 253f;
-            mTextPaint.setTextSize(width / 360.0f * 49.0f);
-            canvas.drawText(text, mXOffset, mYOffset, mTextPaint);
-
-            if (!(mAmbient && (mLowBitAmbient || mBurnInProtection))) {
-                if (mBatteryPercent < 100) {
-                    text = String.format("%02d", mBatteryPercent);
-                    mXOffset = width / 360.0f * 235f;
-                    mYOffset = width / 360.0f * 306f;
-                    mTextPaint.setTextSize(width / 360.0f * 34.0f);
-                    mTextPaint.setColor(!mAmbient ? Color.rgb(254, 153, 0) : Color.rgb(189, 140, 65));
-                    canvas.drawText(text, mXOffset, mYOffset, mTextPaint);
-                } else {
-                    text = String.format("%03d", mBatteryPercent);
-                    mXOffset = width / 360.0f * 232f;
-                    mYOffset = width / 360.0f * 305f;
-                    mTextPaint.setTextSize(width / 360.0f * 31.0f);
-                    mTextPaint.setColor(Color.rgb(254, 153, 0));
-                    canvas.drawText(text, mXOffset, mYOffset, mTextPaint);
-                }
-
-                if (mConnected) {
-                    text = "ONLINE";
-                    mXOffset = width / 360.0f * 232f;
-                    mYOffset = width / 360.0f * 105f;
-                    mTextPaint.setTextSize(width / 360.0f * 25.0f);
-                    canvas.drawText(text, mXOffset, mYOffset, mTextPaint);
-                } else {
-                    text = "OFFLINE";
-                    mXOffset = width / 360.0f * 229f;
-                    mYOffset = width / 360.0f * 105f;
-                    mTextPaint.setTextSize(width / 360.0f * 25.0f);
-                    canvas.drawText(text, mXOffset, mYOffset, mTextPaint);
-                }
-
-                if (!showCalendar) {
-                    text = String.format("%02d", Math.round(mTemp));
-                    mXOffset = width / 360.0f * 238f;
-                    mYOffset = width / 360.0f * 76f;
-                    mTextPaint.setTextSize(width / 360.0f * 31.0f);
-                    canvas.drawText(text, mXOffset, mYOffset, mTextPaint);
-                }
-            }
-            if (showCalendar) {
-                if (calendarFrom != null) {
-                    text = calendarFromText;
-                    mXOffset = width / 360.0f * 129f;
-                    mYOffset = width / 360.0f * 76f;
-                    mTextPaint.setTextSize(width / 360.0f * 31.0f);
-                    canvas.drawText(text, mXOffset, mYOffset, mTextPaint);
-                }
-
-                if (calendarTo != null) {
-                    text = calendarToText;
-                    mXOffset = width / 360.0f * 216f;
-                    mYOffset = width / 360.0f * 76f;
-                    mTextPaint.setTextSize(width / 360.0f * 31.0f);
-                    canvas.drawText(text, mXOffset, mYOffset, mTextPaint);
-                }
-            }
+            mFrame.setStatic(mClock, inputs.batteryPercent, mRendered.temperature, calendar);
+            drawFields(canvas, mLayout.staticFields, frameState(inputs));
         }
 
         /**
-         * Starts the {@link #mUpdateTimeHandler} timer if it should be running and isn't currently
-         * or stops it if it shouldn't be running but currently is.
+         * Switches {@link #mTicks} between ticking every second, waiting for onTimeTick, and not
+         * drawing at all, to match whether we're visible and in ambient mode.
          */
-        private void updateTimer() {
-            mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
-            if (shouldTimerBeRunning()) {
-                mUpdateTimeHandler.sendEmptyMessage(MSG_UPDATE_TIME);
+        private void updateTicks() {
+            long now = System.currentTimeMillis();
+            mTicks.setMode(!isVisible() ? TickScheduler.MODE_HIDDEN
+                    : isInAmbientMode() ? TickScheduler.MODE_AMBIENT
+                    : TickScheduler.MODE_INTERACTIVE, now);
+            // Catches up after ambient mode and moves calendar transitions to the scheduler, or
+            // leaves them to onTimeTick.
+            if (updateCalendar(now)) {
+                mTicks.markDirty(now);
             }
         }
 
         /**
-         * Returns whether the {@link #mUpdateTimeHandler} timer should be running. The timer should
-         * only run when we're visible and in interactive mode.
+         * Returns whether the face ticks every second. It should only do so when we're visible
+         * and in interactive mode.
          */
         private boolean shouldTimerBeRunning() {
             return isVisible() && !isInAmbientMode();
         }
 
-        long lastBackgroundUpdate;
+        @Override
+        public void runJob(int job, long now) {
+            switch (job) {
+                case TickScheduler.JOB_LOAD_CALENDAR:
+                    cancelLoadCalendarTask();
+                    mLoadCalendarTask = new CalendarSync();
+                    mLoadCalendarTask.execute();
+                    break;
+                case TickScheduler.JOB_CALENDAR_TRANSITION:
+                    if (updateCalendar(now)) {
+                        mTicks.markDirty(now);
+                    }
+                    break;
+                case TickScheduler.JOB_REQUEST_WEATHER:
+                    requestWeather();
+                    break;
+            }
+        }
 
-        /**
-         * Handle updating the time periodically in interactive mode.
-         */
-        private void handleUpdateTimeMessage() {
+        @Override
+        public void redraw() {
             invalidate();
-            if (shouldTimerBeRunning()) {
-                long timeMs = System.currentTimeMillis();
-                long delayMs = INTERACTIVE_UPDATE_RATE_MS
-                        - (timeMs % INTERACTIVE_UPDATE_RATE_MS);
-                mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-                checkBackgroundUpdate();
-            }
         }
 
-        private void checkBackgroundUpdate() {
-            if (!mConnected) {
-                return;
+        @Override
+        public void wakeAt(long time) {
+            mTickHandler.removeMessages(MSG_TICK);
+            if (time != Long.MAX_VALUE) {
+                long delayMs = time - System.currentTimeMillis();
+                mTickHandler.sendEmptyMessageDelayed(MSG_TICK, Math.max(0, delayMs));
             }
+        }
 
-            mCalendar.setTimeInMillis(System.currentTimeMillis());
-
-            if (mCalendar.getTimeInMillis()-lastBackgroundUpdate > DateUtils.MINUTE_IN_MILLIS*3
-                    && mCalendar.get(Calendar.MINUTE)%5 <= 1) {
-                backgroundUpdate();
+        /* Schedules the weather request job for when mWeatherRefresh says one is next due. */
+        private void scheduleWeatherRequest() {
+            long now = System.currentTimeMillis();
+            if (!mApiConnected || !mWeatherItemRead || !mWeatherCapabilityKnown) {
+                mTicks.cancel(TickScheduler.JOB_REQUEST_WEATHER, now);
+                return;
             }
+            mTicks.schedule(TickScheduler.JOB_REQUEST_WEATHER,
+                    mWeatherRefresh.nextRequestAt(mPower.refreshScale(), !mAmbient), now);
         }
 
-        private void backgroundUpdate() {
-            lastBackgroundUpdate = mCalendar.getTimeInMillis();
+        /*
+         * Switches the tick rate and background to the new power tier, and stretches or shrinks
+         * the refreshes to match.
+         */
+        private void applyPowerTier(long now) {
+            Log.d(TAG, "Power tier " + mPower.tier());
+            mTicks.setPeriod(mPower.tickPeriod(), now);
+            mRendered.invalidate();
+            mTicks.markDirty(now);
+        }
 
-            mLoadCalendarHandler.sendEmptyMessage(MSG_LOAD_CALENDAR);
+        /**
+         * Asks the phone for a forecast if one is due. The phone answers by pushing the DataItem;
+         * if it doesn't, or there is no phone, mWeatherRefresh backs off.
+         */
+        private void requestWeather() {
+            if (!mApiConnected) {
+                return;
+            }
+            if (!mWeatherRefresh.isDue(mPower.refreshScale(), !mAmbient)) {
+                scheduleWeatherRequest();
+                return;
+            }
+            if (mWeatherNodeId == null) {
+                mWeatherRefresh.onSendFailed();
+                scheduleWeatherRequest();
+                return;
+            }
 
             byte[] data = {};
 
-            Log.d(TAG, "Background update");
+            Log.d(TAG, "Requesting weather");
 
-            if (mWeatherNodeId != null && mApiConnected) {
-                Wearable.MessageApi.sendMessage(mGoogleApiClient, mWeatherNodeId,
-                        WEATHER_PATH, data).setResultCallback(
-                        new ResultCallback<MessageApi.SendMessageResult>() {
-                            @Override
-                            public void onResult(@NonNull MessageApi.SendMessageResult result) {
+            mWeatherRefresh.onSent();
+            mPower.onSend(System.currentTimeMillis());
+            Wearable.MessageApi.sendMessage(mGoogleApiClient, mWeatherNodeId,
+                    WEATHER_PATH, data).setResultCallback(
+                    new ResultCallback<MessageApi.SendMessageResult>() {
+                        @Override
+                        public void onResult(@NonNull MessageApi.SendMessageResult result) {
+                            if (!result.getStatus().isSuccess()) {
+                                mWeatherRefresh.onSendFailed();
+                                scheduleWeatherRequest();
                             }
                         }
-                );
-            }
+                    }
+            );
+            // Checks for a reply once the timeout is up.
+            scheduleWeatherRequest();
         }
     }
 }
@@ -0,0 +1,110 @@
+package thjread.dilithium;
+
+/**
+ * The text of every field of the face and the walk over the fields a frame draws, apart from
+ * the Canvas so that the work of a frame can be run and measured in a plain JVM. The text
+ * buffers are reused, so filling them and drawing the fields doesn't allocate.
+ *
+ * <p>Not thread safe; the engine uses it from the main thread.
+ */
+final class FaceFrame {
+    /** Where the fields of a frame are drawn; the engine blits them through its GlyphAtlas. */
+    interface Target {
+        /** Draws text for field with its left edge at x, in the field's paint for state. */
+        void drawField(FaceLayout.Placed field, FaceText text, float x, int state);
+    }
+
+    private final FaceText mTimeText = new FaceText(8);
+    private final FaceText mDateText = new FaceText(10);
+    private final FaceText mBatteryText = new FaceText(4);
+    private final FaceText mTempText = new FaceText(12);
+    private final FaceText mOnlineText = new FaceText(6).append("ONLINE");
+    private final FaceText mOfflineText = new FaceText(7).append("OFFLINE");
+    private final FaceText mCalendarFromText = new FaceText(CalendarLabels.MAX_LABEL_LENGTH);
+    private final FaceText mCalendarToText = new FaceText(CalendarLabels.MAX_LABEL_LENGTH);
+    /* The calendar labels last set, for the widths of the right-aligned fields. */
+    private CalendarDisplay.State mCalendar = CalendarDisplay.HIDDEN;
+
+    /** Returns the {@code FaceLayout.STATE_*} bits for a frame. */
+    static int state(boolean ambient, boolean detailsHidden, boolean flatBackground,
+                     int batteryPercent, boolean connected, boolean showCalendar) {
+        int state = 0;
+        if (ambient) {
+            state |= FaceLayout.STATE_AMBIENT;
+            if (detailsHidden) {
+                state |= FaceLayout.STATE_DETAILS_HIDDEN;
+            }
+        }
+        if (batteryPercent >= 100) {
+            state |= FaceLayout.STATE_BATTERY_FULL;
+        }
+        if (connected) {
+            state |= FaceLayout.STATE_CONNECTED;
+        }
+        if (showCalendar) {
+            state |= FaceLayout.STATE_SHOW_CALENDAR;
+        }
+        if (!ambient && flatBackground) {
+            state |= FaceLayout.STATE_FLAT_BACKGROUND;
+        }
+        return state;
+    }
+
+    void setTime(FaceClock clock, boolean showSeconds) {
+        mTimeText.setTime(clock.hour, clock.minute, clock.second, showSeconds);
+    }
+
+    /** Sets the text of the fields in the static layer. */
+    void setStatic(FaceClock clock, int batteryPercent, int temperature,
+                   CalendarDisplay.State calendar) {
+        mDateText.setDate(clock.year, clock.month, clock.dayOfMonth);
+        mBatteryText.clear().appendPadded(batteryPercent, batteryPercent < 100 ? 2 : 3);
+        mTempText.clear().appendPadded(temperature, 2);
+        mCalendarFromText.clear().append(calendar.from.text);
+        mCalendarToText.clear().append(calendar.to.text);
+        mCalendar = calendar;
+    }
+
+    /** Draws those of fields that are visible in state onto target. */
+    void draw(FaceLayout.Placed[] fields, int state, Target target) {
+        for (FaceLayout.Placed field : fields) {
+            if (field.isVisible(state)) {
+                int id = field.field.id;
+                target.drawField(field, text(id), field.left(width(id)), state);
+            }
+        }
+    }
+
+    FaceText text(int id) {
+        switch (id) {
+            case FaceLayout.FIELD_TIME:
+                return mTimeText;
+            case FaceLayout.FIELD_DATE:
+                return mDateText;
+            case FaceLayout.FIELD_BATTERY:
+                return mBatteryText;
+            case FaceLayout.FIELD_ONLINE:
+                return mOnlineText;
+            case FaceLayout.FIELD_OFFLINE:
+                return mOfflineText;
+            case FaceLayout.FIELD_TEMP:
+                return mTempText;
+            case FaceLayout.FIELD_CALENDAR_FROM:
+                return mCalendarFromText;
+            default:
+                return mCalendarToText;
+        }
+    }
+
+    /** The measured width of right-aligned fields, in 360px layout units. */
+    private float width(int id) {
+        switch (id) {
+            case FaceLayout.FIELD_CALENDAR_FROM:
+                return mCalendar.from.width;
+            case FaceLayout.FIELD_CALENDAR_TO:
+                return mCalendar.to.width;
+            default:
+                return 0;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package thjread.dilithium;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Publishes {@link FaceInputs} snapshots. Any thread may update a field; each update swaps in a
+ * new snapshot with compare-and-set, so concurrent updates of different fields are never lost.
+ * Readers take the current snapshot with {@link #get} without locking. Setting a field to the
+ * value it already has publishes nothing, and the setters return whether anything changed.
+ */
+final class FaceInputStore {
+    private final AtomicReference<FaceInputs> mInputs =
+            new AtomicReference<>(FaceInputs.INITIAL);
+
+    FaceInputs get() {
+        return mInputs.get();
+    }
+
+    boolean setCalendar(CalendarIndex calendar) {
+        FaceInputs current;
+        do {
+            current = mInputs.get();
+            if (current.calendar == calendar) {
+                return false;
+            }
+        } while (!mInputs.compareAndSet(current, current.withCalendar(calendar)));
+        return true;
+    }
+
+    /** Publishes weather, which mustn't be modified afterwards. */
+    boolean setWeather(WeatherPayload weather) {
+        FaceInputs current;
+        do {
+            current = mInputs.get();
+            if (current.weather == weather) {
+                return false;
+            }
+        } while (!mInputs.compareAndSet(current, current.withWeather(weather)));
+        return true;
+    }
+
+    boolean setBatteryPercent(int batteryPercent) {
+        FaceInputs current;
+        do {
+            current = mInputs.get();
+            if (current.batteryPercent == batteryPercent) {
+                return false;
+            }
+        } while (!mInputs.compareAndSet(current, current.withBatteryPercent(batteryPercent)));
+        return true;
+    }
+
+    boolean setConnected(boolean connected) {
+        FaceInputs current;
+        do {
+            current = mInputs.get();
+            if (current.connected == connected) {
+                return false;
+            }
+        } while (!mInputs.compareAndSet(current, current.withConnected(connected)));
+        return true;
+    }
+}
@@ -0,0 +1,47 @@
+package thjread.dilithium;
+
+/**
+ * One consistent set of the inputs the face is drawn from that arrive from other threads and
+ * components: the calendar, the weather from the phone, the battery level and whether the
+ * phone is connected. Instances are never modified, nor is the weather payload once published;
+ * {@link FaceInputStore} publishes a new one for every change, so a frame that reads one
+ * snapshot can't see half of an update.
+ */
+final class FaceInputs {
+    static final FaceInputs INITIAL = new FaceInputs(CalendarIndex.EMPTY, null, 0, true);
+
+    final CalendarIndex calendar;
+    /* Null until the phone has sent a forecast. */
+    final WeatherPayload weather;
+    final int batteryPercent;
+    final boolean connected;
+
+    FaceInputs(CalendarIndex calendar, WeatherPayload weather, int batteryPercent,
+               boolean connected) {
+        this.calendar = calendar;
+        this.weather = weather;
+        this.batteryPercent = batteryPercent;
+        this.connected = connected;
+    }
+
+    /** The temperature to show at the given time, in degrees Celsius. */
+    float temperatureAt(long time) {
+        return weather != null ? weather.temperatureAt(time) : 0;
+    }
+
+    FaceInputs withCalendar(CalendarIndex calendar) {
+        return new FaceInputs(calendar, weather, batteryPercent, connected);
+    }
+
+    FaceInputs withWeather(WeatherPayload weather) {
+        return new FaceInputs(calendar, weather, batteryPercent, connected);
+    }
+
+    FaceInputs withBatteryPercent(int batteryPercent) {
+        return new FaceInputs(calendar, weather, batteryPercent, connected);
+    }
+
+    FaceInputs withConnected(boolean connected) {
+        return new FaceInputs(calendar, weather, batteryPercent, connected);
+    }
+}
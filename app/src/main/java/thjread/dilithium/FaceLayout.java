@@ -0,0 +1,221 @@
+package thjread.dilithium;
+
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Typeface;
+
+/**
+ * Where and how each text field of the face is drawn. Positions and sizes are given for a 360px
+ * wide face; {@link #resolve} scales them to the surface once and builds a ready-to-use Paint per
+ * field for interactive and ambient mode, so drawing a frame never touches paint state.
+ */
+final class FaceLayout {
+    static final int FIELD_TIME = 0;
+    static final int FIELD_DATE = 1;
+    static final int FIELD_BATTERY = 2;
+    static final int FIELD_ONLINE = 3;
+    static final int FIELD_OFFLINE = 4;
+    static final int FIELD_TEMP = 5;
+    static final int FIELD_CALENDAR_FROM = 6;
+    static final int FIELD_CALENDAR_TO = 7;
+
+    /* The time is drawn every frame, everything else is cached in the static layer. */
+    static final int LAYER_STATIC = 0;
+    static final int LAYER_TIME = 1;
+
+    /* Time and date: black on the bitmap background, white on a flat one and in ambient mode. */
+    static final int ROLE_PRIMARY = 0;
+    /* Battery, connectivity and temperature: orange, dimmed in ambient mode below 100%. */
+    static final int ROLE_DETAIL = 1;
+    /* Calendar labels: like ROLE_DETAIL, but white when the details are hidden in ambient mode. */
+    static final int ROLE_CALENDAR = 2;
+
+    /* Whether x is where the text starts or where it ends. */
+    static final int ALIGN_LEFT = 0;
+    static final int ALIGN_RIGHT = 1;
+
+    /* Text size of the calendar labels at 360px, which CalendarLabels measures them at. */
+    static final float CALENDAR_TEXT_SIZE = 31f;
+
+    /* Bits of the per-frame state that the visibility and colour of a field depend on. */
+    static final int STATE_AMBIENT = 1;
+    static final int STATE_DETAILS_HIDDEN = 1 << 1;
+    static final int STATE_BATTERY_FULL = 1 << 2;
+    static final int STATE_CONNECTED = 1 << 3;
+    static final int STATE_SHOW_CALENDAR = 1 << 4;
+    /* The power saver's flat fill, which is dark, instead of the bitmap. */
+    static final int STATE_FLAT_BACKGROUND = 1 << 5;
+
+    /* Color.rgb(254, 153, 0) and Color.rgb(189, 140, 65). */
+    private static final int ORANGE = 0xfffe9900;
+    private static final int DIM_ORANGE = 0xffbd8c41;
+
+    static final class Field {
+        final int id;
+        final int layer;
+        final float x;
+        final float y;
+        final float size;
+        final int role;
+        final int align;
+        final String glyphs;
+        /* The field is visible when (state & visibleMask) == visibleValue. */
+        final int visibleMask;
+        final int visibleValue;
+
+        Field(int id, int layer, float x, float y, float size, int role, int align, String glyphs,
+              int visibleMask, int visibleValue) {
+            this.id = id;
+            this.layer = layer;
+            this.x = x;
+            this.y = y;
+            this.size = size;
+            this.role = role;
+            this.align = align;
+            this.glyphs = glyphs;
+            this.visibleMask = visibleMask;
+            this.visibleValue = visibleValue;
+        }
+    }
+
+    static final Field[] FIELDS = {
+            new Field(FIELD_TIME, LAYER_TIME, 101f, 189f, 89f, ROLE_PRIMARY, ALIGN_LEFT,
+                    GlyphAtlas.DIGITS, 0, 0),
+            new Field(FIELD_DATE, LAYER_STATIC, 109f, 253f, 49f, ROLE_PRIMARY, ALIGN_LEFT,
+                    GlyphAtlas.DIGITS, 0, 0),
+            new Field(FIELD_BATTERY, LAYER_STATIC, 235f, 306f, 34f, ROLE_DETAIL, ALIGN_LEFT,
+                    GlyphAtlas.DIGITS, STATE_DETAILS_HIDDEN | STATE_BATTERY_FULL, 0),
+            new Field(FIELD_BATTERY, LAYER_STATIC, 232f, 305f, 31f, ROLE_DETAIL, ALIGN_LEFT,
+                    GlyphAtlas.DIGITS, STATE_DETAILS_HIDDEN | STATE_BATTERY_FULL,
+                    STATE_BATTERY_FULL),
+            new Field(FIELD_ONLINE, LAYER_STATIC, 232f, 105f, 25f, ROLE_DETAIL, ALIGN_LEFT,
+                    GlyphAtlas.LETTERS, STATE_DETAILS_HIDDEN | STATE_CONNECTED, STATE_CONNECTED),
+            new Field(FIELD_OFFLINE, LAYER_STATIC, 229f, 105f, 25f, ROLE_DETAIL, ALIGN_LEFT,
+                    GlyphAtlas.LETTERS, STATE_DETAILS_HIDDEN | STATE_CONNECTED, 0),
+            new Field(FIELD_TEMP, LAYER_STATIC, 238f, 76f, 31f, ROLE_DETAIL, ALIGN_LEFT,
+                    GlyphAtlas.DIGITS, STATE_DETAILS_HIDDEN | STATE_SHOW_CALENDAR, 0),
+            // The labels end where a space and four letters starting at 129 and 216 used to.
+            new Field(FIELD_CALENDAR_FROM, LAYER_STATIC, 180f, 76f, CALENDAR_TEXT_SIZE,
+                    ROLE_CALENDAR, ALIGN_RIGHT, GlyphAtlas.LETTERS, STATE_SHOW_CALENDAR,
+                    STATE_SHOW_CALENDAR),
+            new Field(FIELD_CALENDAR_TO, LAYER_STATIC, 267f, 76f, CALENDAR_TEXT_SIZE,
+                    ROLE_CALENDAR, ALIGN_RIGHT, GlyphAtlas.LETTERS, STATE_SHOW_CALENDAR,
+                    STATE_SHOW_CALENDAR),
+    };
+
+    /** A field scaled to the surface, with its paints. */
+    static final class Placed {
+        final Field field;
+        final float scale;
+        final float x;
+        final float y;
+        final Paint interactivePaint;
+        final Paint flatPaint;
+        final Paint ambientPaint;
+        final Paint ambientFullPaint;
+
+        Placed(Field field, float scale, Paint interactivePaint, Paint flatPaint,
+               Paint ambientPaint, Paint ambientFullPaint) {
+            this.field = field;
+            this.scale = scale;
+            this.x = field.x * scale;
+            this.y = field.y * scale;
+            this.interactivePaint = interactivePaint;
+            this.flatPaint = flatPaint;
+            this.ambientPaint = ambientPaint;
+            this.ambientFullPaint = ambientFullPaint;
+        }
+
+        boolean isVisible(int state) {
+            return (state & field.visibleMask) == field.visibleValue;
+        }
+
+        Paint paint(int state) {
+            if ((state & STATE_AMBIENT) != 0) {
+                return (state & STATE_BATTERY_FULL) != 0 ? ambientFullPaint : ambientPaint;
+            }
+            return (state & STATE_FLAT_BACKGROUND) != 0 ? flatPaint : interactivePaint;
+        }
+
+        /** Where text of the given width in 360px units starts. */
+        float left(float width) {
+            return field.align == ALIGN_RIGHT ? x - width * scale : x;
+        }
+    }
+
+    /* Resolved fields, split by layer. */
+    Placed[] staticFields = new Placed[0];
+    Placed[] timeFields = new Placed[0];
+
+    /**
+     * Scales the layout to a surface of the given width and builds the paints for the current
+     * display properties. Glyph sheets for every paint are prepared in atlas.
+     */
+    void resolve(float width, Typeface typeface, boolean lowBitAmbient, boolean burnInProtection,
+                 GlyphAtlas atlas) {
+        float scale = width / 360.0f;
+        int staticCount = 0;
+        for (Field field : FIELDS) {
+            if (field.layer == LAYER_STATIC) {
+                staticCount++;
+            }
+        }
+        Placed[] staticFields = new Placed[staticCount];
+        Placed[] timeFields = new Placed[FIELDS.length - staticCount];
+        int s = 0, t = 0;
+        for (Field field : FIELDS) {
+            int ambientState = STATE_AMBIENT
+                    | (lowBitAmbient || burnInProtection ? STATE_DETAILS_HIDDEN : 0);
+            Paint interactive = createPaint(typeface, field.size * scale,
+                    color(field.role, 0), false, false);
+            // The atlas applies the colour when blitting, so this shares the interactive sheet.
+            Paint flat = createPaint(typeface, field.size * scale,
+                    color(field.role, STATE_FLAT_BACKGROUND), false, false);
+            Paint ambient = createPaint(typeface, field.size * scale,
+                    color(field.role, ambientState), lowBitAmbient, burnInProtection);
+            Paint ambientFull = createPaint(typeface, field.size * scale,
+                    color(field.role, ambientState | STATE_BATTERY_FULL), lowBitAmbient,
+                    burnInProtection);
+            atlas.prepare(interactive, field.glyphs);
+            atlas.prepare(ambient, field.glyphs);
+            Placed placed = new Placed(field, scale, interactive, flat, ambient, ambientFull);
+            if (field.layer == LAYER_STATIC) {
+                staticFields[s++] = placed;
+            } else {
+                timeFields[t++] = placed;
+            }
+        }
+        this.staticFields = staticFields;
+        this.timeFields = timeFields;
+    }
+
+    /** The text colour of a role in a frame with the given state bits. */
+    static int color(int role, int state) {
+        if ((state & STATE_AMBIENT) == 0) {
+            if (role == ROLE_PRIMARY) {
+                return (state & STATE_FLAT_BACKGROUND) != 0 ? Color.WHITE : Color.BLACK;
+            }
+            return ORANGE;
+        }
+        if (role == ROLE_PRIMARY
+                || (role == ROLE_CALENDAR && (state & STATE_DETAILS_HIDDEN) != 0)) {
+            return Color.WHITE;
+        }
+        // As the face always has, a full battery keeps the details at full brightness.
+        return (state & STATE_BATTERY_FULL) != 0 ? ORANGE : DIM_ORANGE;
+    }
+
+    private static Paint createPaint(Typeface typeface, float textSize, int color,
+                                     boolean lowBitAmbient, boolean burnInProtection) {
+        Paint paint = new Paint();
+        paint.setTypeface(typeface);
+        paint.setTextSize(textSize);
+        paint.setColor(color);
+        paint.setAntiAlias(!lowBitAmbient);
+        if (burnInProtection) {
+            paint.setStyle(Paint.Style.STROKE);
+            paint.setStrokeWidth(1);
+        }
+        return paint;
+    }
+}
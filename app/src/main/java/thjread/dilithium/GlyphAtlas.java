@@ -0,0 +1,186 @@
+package thjread.dilithium;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+/**
+ * Pre-rasterized glyphs for the text on the face. Each variant renders a glyph set once into an
+ * ALPHA_8 sprite sheet for one (typeface, size, style, stroke, anti-alias) combination, so that
+ * drawing text is a run of bitmap sub-rect blits. The colour is applied when blitting, so one
+ * variant serves every colour drawn at that size and style. Characters missing from the variant
+ * (e.g. unusual letters in calendar labels) fall back to {@link Canvas#drawText}.
+ */
+final class GlyphAtlas {
+    static final String DIGITS = "0123456789:.-";
+    static final String LETTERS = DIGITS + " _ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+
+    private static final int SHEET_WIDTH = 512;
+
+    private static final class Variant {
+        final Typeface typeface;
+        final float textSize;
+        final Paint.Style style;
+        final float strokeWidth;
+        final boolean antiAlias;
+
+        /* Indexed by character; a null src means the character isn't in the sheet. */
+        final Rect[] src = new Rect[128];
+        final int[] left = new int[128];
+        final int[] top = new int[128];
+        final float[] advance = new float[128];
+        Bitmap sheet;
+
+        Variant(Paint paint) {
+            typeface = paint.getTypeface();
+            textSize = paint.getTextSize();
+            style = paint.getStyle();
+            strokeWidth = paint.getStrokeWidth();
+            antiAlias = paint.isAntiAlias();
+        }
+
+        boolean matches(Paint paint) {
+            return textSize == paint.getTextSize()
+                    && typeface == paint.getTypeface()
+                    && style == paint.getStyle()
+                    && strokeWidth == paint.getStrokeWidth()
+                    && antiAlias == paint.isAntiAlias();
+        }
+    }
+
+    private Variant[] mVariants = new Variant[16];
+    private int mVariantCount;
+
+    private final Paint mBlitPaint = new Paint();
+    private final Rect mDst = new Rect();
+
+    /**
+     * Makes sure a variant matching the current state of paint exists, rendering the given glyphs
+     * into a new sheet if necessary.
+     */
+    void prepare(Paint paint, String glyphs) {
+        if (find(paint) != null) {
+            return;
+        }
+        if (mVariantCount == mVariants.length) {
+            Variant[] variants = new Variant[mVariantCount * 2];
+            System.arraycopy(mVariants, 0, variants, 0, mVariantCount);
+            mVariants = variants;
+        }
+        mVariants[mVariantCount++] = render(paint, glyphs);
+    }
+
+    /** Drops every variant, e.g. when the surface size changes. */
+    void clear() {
+        for (int i = 0; i < mVariantCount; ++i) {
+            mVariants[i].sheet.recycle();
+            mVariants[i] = null;
+        }
+        mVariantCount = 0;
+    }
+
+    int byteCount() {
+        int bytes = 0;
+        for (int i = 0; i < mVariantCount; ++i) {
+            bytes += mVariants[i].sheet.getByteCount();
+        }
+        return bytes;
+    }
+
+    void drawText(Canvas canvas, char[] text, int start, int count, float x, float y,
+                  Paint paint) {
+        Variant variant = find(paint);
+        if (variant == null) {
+            canvas.drawText(text, start, count, x, y, paint);
+            return;
+        }
+        mBlitPaint.setColor(paint.getColor());
+        // Snap the origin to the pixel grid once and advance the pen from it in floats, so the
+        // spacing between glyphs doesn't change with where the string starts.
+        int originX = Math.round(x);
+        int originY = Math.round(y);
+        float pen = 0;
+        for (int i = start; i < start + count; ++i) {
+            pen = drawGlyph(canvas, variant, text, i, originX, originY, pen, paint);
+        }
+    }
+
+    /* Draws one glyph at pen pixels past the origin and returns the pen after it. */
+    private float drawGlyph(Canvas canvas, Variant variant, char[] text, int i, int originX,
+                            int originY, float pen, Paint paint) {
+        char c = text[i];
+        Rect src = c < 128 ? variant.src[c] : null;
+        if (src == null) {
+            canvas.drawText(text, i, 1, originX + pen, originY, paint);
+            return pen + paint.measureText(text, i, 1);
+        }
+        if (!src.isEmpty()) {
+            int left = originX + Math.round(pen) + variant.left[c];
+            int top = originY + variant.top[c];
+            mDst.set(left, top, left + src.width(), top + src.height());
+            canvas.drawBitmap(variant.sheet, src, mDst, mBlitPaint);
+        }
+        return pen + variant.advance[c];
+    }
+
+    private Variant find(Paint paint) {
+        for (int i = 0; i < mVariantCount; ++i) {
+            if (mVariants[i].matches(paint)) {
+                return mVariants[i];
+            }
+        }
+        return null;
+    }
+
+    private static Variant render(Paint paint, String glyphs) {
+        Variant variant = new Variant(paint);
+        Paint glyphPaint = new Paint(paint);
+        glyphPaint.setColor(Color.BLACK);
+        int pad = 1 + (int) Math.ceil(paint.getStrokeWidth());
+
+        // Shelf-pack the glyph cells, then render them in a second pass once the sheet height
+        // is known.
+        char[] chars = glyphs.toCharArray();
+        Rect bounds = new Rect();
+        float[] width = new float[1];
+        int x = 0, y = 0, shelfHeight = 0;
+        for (int i = 0; i < chars.length; ++i) {
+            char c = chars[i];
+            glyphPaint.getTextBounds(chars, i, 1, bounds);
+            glyphPaint.getTextWidths(chars, i, 1, width);
+            variant.advance[c] = width[0];
+            if (bounds.isEmpty()) {
+                variant.src[c] = new Rect();
+                continue;
+            }
+            int w = bounds.width() + 2 * pad;
+            int h = bounds.height() + 2 * pad;
+            if (x + w > SHEET_WIDTH) {
+                x = 0;
+                y += shelfHeight;
+                shelfHeight = 0;
+            }
+            variant.src[c] = new Rect(x, y, x + w, y + h);
+            variant.left[c] = bounds.left - pad;
+            variant.top[c] = bounds.top - pad;
+            x += w;
+            shelfHeight = Math.max(shelfHeight, h);
+        }
+
+        variant.sheet = Bitmap.createBitmap(SHEET_WIDTH, Math.max(1, y + shelfHeight),
+                Bitmap.Config.ALPHA_8);
+        Canvas canvas = new Canvas(variant.sheet);
+        for (int i = 0; i < chars.length; ++i) {
+            char c = chars[i];
+            Rect src = variant.src[c];
+            if (!src.isEmpty()) {
+                canvas.drawText(chars, i, 1, src.left - variant.left[c], src.top - variant.top[c],
+                        glyphPaint);
+            }
+        }
+        return variant;
+    }
+}
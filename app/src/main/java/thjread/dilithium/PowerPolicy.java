@@ -0,0 +1,141 @@
+package thjread.dilithium;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks how hard the face works from the battery level. At or below the saver level it ticks
+ * once a minute without seconds, draws a flat background instead of the bitmap, and refreshes
+ * the weather and calendar less often; at or below the critical level it stretches the refreshes
+ * further. A tier is only left once the battery is a hysteresis margin above the level that
+ * entered it, or the watch is charging, so a battery hovering at a threshold doesn't flip the
+ * face back and forth.
+ *
+ * <p>It also records, per tier, the time spent in it and the frames drawn and requests sent
+ * meanwhile, so the savings can be read off as rates.
+ *
+ * <p>Not thread safe; the engine uses it from the main thread.
+ */
+final class PowerPolicy {
+    static final int TIER_NORMAL = 0;
+    static final int TIER_SAVER = 1;
+    static final int TIER_CRITICAL = 2;
+    static final int TIER_COUNT = 3;
+
+    private static final long HOUR_MS = TimeUnit.HOURS.toMillis(1);
+    private static final long[] TICK_PERIOD_MS = {
+            TimeUnit.SECONDS.toMillis(1), TimeUnit.MINUTES.toMillis(1),
+            TimeUnit.MINUTES.toMillis(1)};
+    private static final int[] REFRESH_SCALE = {1, 2, 4};
+    private static final long[] CALENDAR_CHANGE_DELAY_MS = {
+            TimeUnit.SECONDS.toMillis(1), TimeUnit.MINUTES.toMillis(1),
+            TimeUnit.MINUTES.toMillis(5)};
+
+    private final int mSaverLevel;
+    private final int mCriticalLevel;
+    private final int mHysteresis;
+
+    private int mTier = TIER_NORMAL;
+    private long mTierSince = -1;
+    private final long[] mTime = new long[TIER_COUNT];
+    private final int[] mFrames = new int[TIER_COUNT];
+    private final int[] mSends = new int[TIER_COUNT];
+
+    PowerPolicy(int saverLevel, int criticalLevel, int hysteresis) {
+        mSaverLevel = saverLevel;
+        mCriticalLevel = criticalLevel;
+        mHysteresis = hysteresis;
+    }
+
+    /** Moves to the tier for a battery reading. Returns whether the tier changed. */
+    boolean update(int batteryPercent, boolean charging, long now) {
+        int tier;
+        if (charging) {
+            tier = TIER_NORMAL;
+        } else if (batteryPercent <= mCriticalLevel) {
+            tier = TIER_CRITICAL;
+        } else if (batteryPercent <= mSaverLevel) {
+            tier = TIER_SAVER;
+        } else {
+            tier = TIER_NORMAL;
+        }
+        // Leaving a tier takes a margin above the level that entered it.
+        if (!charging) {
+            if (mTier == TIER_CRITICAL && tier < TIER_CRITICAL
+                    && batteryPercent < mCriticalLevel + mHysteresis) {
+                tier = TIER_CRITICAL;
+            } else if (mTier >= TIER_SAVER && tier == TIER_NORMAL
+                    && batteryPercent < mSaverLevel + mHysteresis) {
+                tier = TIER_SAVER;
+            }
+        }
+        account(now);
+        if (tier == mTier) {
+            return false;
+        }
+        mTier = tier;
+        return true;
+    }
+
+    int tier() {
+        return mTier;
+    }
+
+    /** The interactive tick period. */
+    long tickPeriod() {
+        return TICK_PERIOD_MS[mTier];
+    }
+
+    boolean showsSeconds() {
+        return mTier == TIER_NORMAL;
+    }
+
+    boolean flatBackground() {
+        return mTier != TIER_NORMAL;
+    }
+
+    /** How many times longer than normal to wait between weather refreshes. */
+    int refreshScale() {
+        return REFRESH_SCALE[mTier];
+    }
+
+    /** How long to let a burst of calendar changes settle before reloading. */
+    long calendarChangeDelay() {
+        return CALENDAR_CHANGE_DELAY_MS[mTier];
+    }
+
+    void onFrame(long now) {
+        account(now);
+        mFrames[mTier]++;
+    }
+
+    void onSend(long now) {
+        account(now);
+        mSends[mTier]++;
+    }
+
+    /** The total time spent in a tier, in milliseconds. */
+    long timeIn(int tier, long now) {
+        account(now);
+        return mTime[tier];
+    }
+
+    double framesPerHour(int tier, long now) {
+        return perHour(mFrames[tier], timeIn(tier, now));
+    }
+
+    double sendsPerHour(int tier, long now) {
+        return perHour(mSends[tier], timeIn(tier, now));
+    }
+
+    private static double perHour(int count, long time) {
+        return time > 0 ? (double) count * HOUR_MS / time : 0;
+    }
+
+    /* Adds the time since the last call to the current tier; a clock set back adds nothing. */
+    private void account(long now) {
+        if (mTierSince >= 0 && now > mTierSince) {
+            mTime[mTier] += now - mTierSince;
+        }
+        mTierSince = now;
+    }
+}
@@ -0,0 +1,141 @@
+package thjread.dilithium;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides when the watch should ask the phone for a forecast. The phone pushes a forecast when a
+ * fetch would show something different, and in any case before less than
+ * {@link WeatherPayload#MIN_COVERAGE} of the hourly series it last pushed is left, so a watch
+ * with a forecast can hear nothing for most of that series' length. It only asks when it has no
+ * forecast, or when a grace period has passed since the phone should have pushed again, which
+ * means the phone has stopped pushing. Failed sends and requests that get no reply back off
+ * exponentially. The grace period stretches by the {@link PowerPolicy} scale when the battery is
+ * low, and when the face is in ambient mode, though never past the end of the series, and every
+ * wait is jittered so that watches don't ask in lockstep.
+ *
+ * <p>Not thread safe; the engine uses it from the main thread.
+ */
+final class RefreshScheduler {
+    /* The phone checks on an inexact half-hourly alarm, so its push can be this late. */
+    static final long GRACE_MS = TimeUnit.HOURS.toMillis(1);
+    static final long REPLY_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(2);
+    static final long MIN_RETRY_MS = TimeUnit.MINUTES.toMillis(1);
+    /* Waits are scaled by a random factor in [1 - JITTER, 1 + JITTER). */
+    static final double JITTER = 0.1;
+
+    private final long mGrace;
+    private final Clock mClock;
+    private final Random mRandom;
+
+    /* Fetch time of the newest forecast, 0 if there isn't one. */
+    private long mDataTime;
+    /* When its hourly series ends, and when the phone should have pushed a newer one by. */
+    private long mCoveredUntil;
+    private long mSilentUntil;
+    private long mSentAt;
+    private boolean mAwaitingReply;
+    private long mLastAttempt;
+    private int mFailures;
+    /* Drawn once per wait, so asking again for the same wait gives the same answer. */
+    private double mJitter;
+
+    RefreshScheduler(long grace, Clock clock, Random random) {
+        mGrace = grace;
+        mClock = clock;
+        mRandom = random;
+        redrawJitter();
+    }
+
+    /**
+     * A forecast arrived, whether asked for or pushed. A reply to a request with nothing newer
+     * than the forecast already here backs off like a failure, so a phone that can't fetch
+     * isn't asked again straight away.
+     */
+    void onData(WeatherPayload weather) {
+        boolean newer = weather.fetchTime > mDataTime;
+        if (newer) {
+            mDataTime = weather.fetchTime;
+            mCoveredUntil = weather.coveredUntil();
+            mSilentUntil = Math.max(mDataTime, mCoveredUntil - WeatherPayload.MIN_COVERAGE);
+        }
+        if (newer) {
+            mFailures = 0;
+        } else if (mAwaitingReply) {
+            mFailures++;
+        }
+        mAwaitingReply = false;
+        redrawJitter();
+    }
+
+    /** A request was delivered to the phone; a forecast should follow. */
+    void onSent() {
+        mSentAt = mLastAttempt = mClock.now();
+        mAwaitingReply = true;
+        redrawJitter();
+    }
+
+    /** A request couldn't be delivered, or there was no phone to send it to. */
+    void onSendFailed() {
+        mLastAttempt = mClock.now();
+        mAwaitingReply = false;
+        mFailures++;
+        redrawJitter();
+    }
+
+    /** Consecutive failed or unanswered requests. */
+    int failures() {
+        expireReply();
+        return mFailures;
+    }
+
+    /** When the next request is due, which may be in the past if it is due now. */
+    long nextRequestAt(int scale, boolean interactive) {
+        expireReply();
+        if (mAwaitingReply) {
+            return mSentAt + REPLY_TIMEOUT_MS;
+        }
+        long grace = grace(scale, interactive);
+        if (mFailures > 0) {
+            long backoff = MIN_RETRY_MS << Math.min(mFailures - 1, 20);
+            return mLastAttempt + jitter(Math.min(backoff, grace));
+        }
+        if (mDataTime == 0) {
+            return mClock.now();
+        }
+        long next = mSilentUntil + jitter(grace);
+        if (mCoveredUntil > mSilentUntil) {
+            next = Math.min(next, mCoveredUntil);
+        }
+        return next;
+    }
+
+    boolean isDue(int scale, boolean interactive) {
+        return nextRequestAt(scale, interactive) <= mClock.now();
+    }
+
+    private long grace(int scale, boolean interactive) {
+        long grace = mGrace * scale;
+        if (!interactive) {
+            grace *= 2;
+        }
+        return grace;
+    }
+
+    /* A request the phone never answered counts as a failure. */
+    private void expireReply() {
+        if (mAwaitingReply && mClock.now() - mSentAt >= REPLY_TIMEOUT_MS) {
+            mAwaitingReply = false;
+            mFailures++;
+            redrawJitter();
+        }
+    }
+
+    private long jitter(long wait) {
+        return (long) (wait * mJitter);
+    }
+
+    private void redrawJitter() {
+        mJitter = 1 - JITTER + 2 * JITTER * mRandom.nextDouble();
+    }
+}
@@ -0,0 +1,65 @@
+package thjread.dilithium;
+
+/**
+ * The inputs the static layer was last drawn from, in the form they are shown: whole minutes,
+ * whole percent and whole degrees. Event sources compare a new value with what is shown before
+ * asking for a redraw, so that a battery broadcast that doesn't move the percentage, or a
+ * forecast that rounds to the same temperature, costs no frame.
+ *
+ * <p>Not thread safe; the engine uses it from the main thread.
+ */
+final class RenderedInputs {
+    private boolean mValid;
+    long minute;
+    int batteryPercent;
+    int temperature;
+    boolean connected;
+    CalendarDisplay.State calendar;
+    int backgroundColor;
+    boolean ambient;
+
+    /** Forces the next {@link #update} to report the layer stale, as after a resource change. */
+    void invalidate() {
+        mValid = false;
+    }
+
+    /**
+     * Returns whether any of these differs from what the layer shows, and records them as shown
+     * if so.
+     */
+    boolean update(long minute, int batteryPercent, int temperature, boolean connected,
+                   CalendarDisplay.State calendar, int backgroundColor, boolean ambient) {
+        if (mValid
+                && minute == this.minute
+                && batteryPercent == this.batteryPercent
+                && temperature == this.temperature
+                && connected == this.connected
+                && calendar == this.calendar
+                && backgroundColor == this.backgroundColor
+                && ambient == this.ambient) {
+            return false;
+        }
+        mValid = true;
+        this.minute = minute;
+        this.batteryPercent = batteryPercent;
+        this.temperature = temperature;
+        this.connected = connected;
+        this.calendar = calendar;
+        this.backgroundColor = backgroundColor;
+        this.ambient = ambient;
+        return true;
+    }
+
+    boolean showsBattery(int batteryPercent) {
+        return mValid && batteryPercent == this.batteryPercent;
+    }
+
+    /** The temperature as shown, from degrees Celsius. */
+    static int round(float temperature) {
+        return Math.round(temperature);
+    }
+
+    boolean showsTemperature(float temperature) {
+        return mValid && round(temperature) == this.temperature;
+    }
+}
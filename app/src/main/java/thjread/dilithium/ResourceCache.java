@@ -0,0 +1,130 @@
+package thjread.dilithium;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Typeface;
+
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * Process-wide cache of the typeface and the background bitmaps decoded for the surface, shared by
+ * every engine of the service. Bitmaps are reference counted: an engine acquires the ones it
+ * draws and releases them when it is destroyed or its surface changes. Unreferenced bitmaps are
+ * kept so that re-creating an engine is cheap, until the system asks us to trim memory.
+ */
+final class ResourceCache {
+    private static final String FONT_ASSET = "FINALOLD.TTF";
+
+    private static final class Entry {
+        final Bitmap bitmap;
+        int refCount;
+
+        Entry(Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+    }
+
+    private final Context mContext;
+    private Typeface mTypeface;
+    private final Map<String, Entry> mBitmaps = new HashMap<>();
+
+    ResourceCache(Context context) {
+        mContext = context;
+    }
+
+    synchronized Typeface getTypeface() {
+        if (mTypeface == null) {
+            mTypeface = Typeface.createFromAsset(mContext.getAssets(), FONT_ASSET);
+        }
+        return mTypeface;
+    }
+
+    /**
+     * Returns the drawable resId decoded to width x height in the given config, decoding it if it
+     * isn't cached. Each call must be balanced by a call to {@link #release}.
+     */
+    synchronized Bitmap acquireBitmap(int resId, int width, int height, Bitmap.Config config) {
+        String key = key(resId, width, height, config);
+        Entry entry = mBitmaps.get(key);
+        if (entry == null) {
+            Resources resources = mContext.getResources();
+            int prescaledId = findPrescaled(resId, width, height);
+            Bitmap bitmap = prescaledId != 0
+                    ? BitmapDecoder.decodeExact(resources, prescaledId, config)
+                    : BitmapDecoder.decode(resources, resId, width, height, config);
+            entry = new Entry(bitmap);
+            mBitmaps.put(key, entry);
+        }
+        entry.refCount++;
+        return entry.bitmap;
+    }
+
+    /**
+     * Returns the id of the copy of resId that the build pre-rendered for this surface size (see
+     * prescaleBackgrounds in build.gradle), or 0 if there isn't one.
+     */
+    private int findPrescaled(int resId, int width, int height) {
+        if (width != height) {
+            return 0;
+        }
+        Resources resources = mContext.getResources();
+        return resources.getIdentifier(resources.getResourceEntryName(resId) + "_" + width,
+                "drawable", mContext.getPackageName());
+    }
+
+    synchronized void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+        for (Entry entry : mBitmaps.values()) {
+            if (entry.bitmap == bitmap) {
+                entry.refCount--;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Drops unreferenced bitmaps, and the typeface as well once nothing is running. Called from
+     * {@link android.app.Service#onTrimMemory}.
+     */
+    synchronized void trimMemory(int level) {
+        if (level < ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            return;
+        }
+        boolean referenced = false;
+        Iterator<Entry> it = mBitmaps.values().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.refCount <= 0) {
+                entry.bitmap.recycle();
+                it.remove();
+            } else {
+                referenced = true;
+            }
+        }
+        if (!referenced && level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            mTypeface = null;
+        }
+    }
+
+    synchronized void dump(String prefix, PrintWriter out) {
+        int total = 0;
+        for (Map.Entry<String, Entry> e : mBitmaps.entrySet()) {
+            Bitmap bitmap = e.getValue().bitmap;
+            out.println(prefix + e.getKey() + ": " + bitmap.getByteCount() + " bytes, refs="
+                    + e.getValue().refCount);
+            total += bitmap.getByteCount();
+        }
+        out.println(prefix + "cached bitmaps: " + total + " bytes");
+    }
+
+    private static String key(int resId, int width, int height, Bitmap.Config config) {
+        return resId + "@" + width + "x" + height + "/" + config;
+    }
+}
@@ -0,0 +1,190 @@
+package thjread.dilithium;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coalesces the engine's wakeups onto tick boundaries. Event sources mark the face dirty or
+ * schedule a job rather than redrawing or posting messages of their own; the scheduler wakes at
+ * most once per boundary, runs the jobs that are due, and then redraws once if anything needs it.
+ *
+ * <p>In interactive mode it wakes on every boundary and always redraws, as the seconds change.
+ * In ambient mode the system's time tick is the only wakeup: jobs and dirty state wait for it.
+ * Otherwise the face isn't shown, so nothing is redrawn and it wakes only for due jobs.
+ *
+ * <p>Not thread safe; the engine uses it from the main thread.
+ */
+final class TickScheduler {
+    interface Host {
+        /** Does the background work of a job that has come due. */
+        void runJob(int job, long now);
+
+        void redraw();
+
+        /** Replaces the pending wakeup with one at time, or cancels it for Long.MAX_VALUE. */
+        void wakeAt(long time);
+    }
+
+    static final int MODE_HIDDEN = 0;
+    static final int MODE_AMBIENT = 1;
+    static final int MODE_INTERACTIVE = 2;
+
+    static final int JOB_LOAD_CALENDAR = 0;
+    static final int JOB_CALENDAR_TRANSITION = 1;
+    static final int JOB_REQUEST_WEATHER = 2;
+    private static final int JOB_COUNT = 3;
+
+    /* Counted per wall clock minute. */
+    static final int COUNT_WAKEUPS = 0;
+    static final int COUNT_REDRAWS = 1;
+    /* Redraw requests and jobs, each of which used to get a redraw or wakeup of its own. */
+    static final int COUNT_DIRTY = 2;
+    static final int COUNT_JOBS = 3;
+    private static final int COUNTER_COUNT = 4;
+
+    private static final long MINUTE_MS = TimeUnit.MINUTES.toMillis(1);
+
+    private final Host mHost;
+    private long mPeriod;
+
+    private int mMode = MODE_HIDDEN;
+    private boolean mDirty;
+    private final long[] mDue = new long[JOB_COUNT];
+    /* The wakeup last asked of the host. */
+    private long mWakeAt = Long.MAX_VALUE;
+
+    private long mCountMinute;
+    private final int[] mCounts = new int[COUNTER_COUNT];
+    private final int[] mLastCounts = new int[COUNTER_COUNT];
+
+    TickScheduler(Host host, long period) {
+        mHost = host;
+        mPeriod = period;
+        for (int job = 0; job < JOB_COUNT; ++job) {
+            mDue[job] = Long.MAX_VALUE;
+        }
+    }
+
+    void setMode(int mode, long now) {
+        if (mode != mMode) {
+            mMode = mode;
+            reschedule(now);
+        }
+    }
+
+    /** Changes the interactive tick period, as when the power tier changes. */
+    void setPeriod(long period, long now) {
+        if (period != mPeriod) {
+            mPeriod = period;
+            reschedule(now);
+        }
+    }
+
+    /** Runs a job at the first wakeup at or after time, replacing any earlier schedule for it. */
+    void schedule(int job, long time, long now) {
+        mDue[job] = time;
+        reschedule(now);
+    }
+
+    void cancel(int job, long now) {
+        mDue[job] = Long.MAX_VALUE;
+        reschedule(now);
+    }
+
+    /** Asks for a redraw at the next wakeup. */
+    void markDirty(long now) {
+        mDirty = true;
+        count(COUNT_DIRTY, now);
+    }
+
+    /** Redraws at once, for changes the user is waiting to see or the system expects drawn. */
+    void redrawNow(long now) {
+        redraw(now);
+    }
+
+    /** Called when the wakeup asked of the host arrives. */
+    void onWakeup(long now) {
+        mWakeAt = Long.MAX_VALUE;
+        count(COUNT_WAKEUPS, now);
+        for (int job = 0; job < JOB_COUNT; ++job) {
+            if (mDue[job] <= now) {
+                mDue[job] = Long.MAX_VALUE;
+                count(COUNT_JOBS, now);
+                mHost.runJob(job, now);
+            }
+        }
+        if (mMode == MODE_INTERACTIVE || (mDirty && mMode == MODE_AMBIENT)) {
+            redraw(now);
+        }
+        reschedule(now);
+    }
+
+    /**
+     * The minute has changed. In ambient mode this is the only wakeup; in interactive mode the
+     * tick on the same boundary does the redraw.
+     */
+    void onTimeTick(long now) {
+        mDirty = true;
+        if (mMode == MODE_INTERACTIVE) {
+            count(COUNT_WAKEUPS, now);
+        } else {
+            onWakeup(now);
+        }
+    }
+
+    /** The count for the last complete minute. */
+    int lastMinute(int counter, long now) {
+        roll(now);
+        return mLastCounts[counter];
+    }
+
+    private void redraw(long now) {
+        mDirty = false;
+        count(COUNT_REDRAWS, now);
+        mHost.redraw();
+    }
+
+    private void reschedule(long now) {
+        long next = Long.MAX_VALUE;
+        if (mMode == MODE_INTERACTIVE) {
+            // Every job due by then runs on this tick.
+            next = now - now % mPeriod + mPeriod;
+        } else if (mMode == MODE_HIDDEN) {
+            for (long due : mDue) {
+                if (due == Long.MAX_VALUE) {
+                    continue;
+                }
+                // Rounded up, so that jobs due close together share a wakeup.
+                long aligned = due <= now ? now : (due + mPeriod - 1) / mPeriod * mPeriod;
+                next = Math.min(next, aligned);
+            }
+        }
+        if (next != mWakeAt) {
+            mWakeAt = next;
+            mHost.wakeAt(next);
+        }
+    }
+
+    private void count(int counter, long now) {
+        roll(now);
+        mCounts[counter]++;
+    }
+
+    private void roll(long now) {
+        long minute = now / MINUTE_MS;
+        if (minute == mCountMinute) {
+            return;
+        }
+        if (minute == mCountMinute + 1) {
+            System.arraycopy(mCounts, 0, mLastCounts, 0, COUNTER_COUNT);
+        } else {
+            // Nothing was counted in the minute just gone.
+            for (int i = 0; i < COUNTER_COUNT; ++i) {
+                mLastCounts[i] = 0;
+            }
+        }
+        for (int i = 0; i < COUNTER_COUNT; ++i) {
+            mCounts[i] = 0;
+        }
+        mCountMinute = minute;
+    }
+}
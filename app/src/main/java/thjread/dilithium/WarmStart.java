@@ -0,0 +1,187 @@
+package thjread.dilithium;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A snapshot of the last good forecast and calendar index, kept in a small file so that a
+ * restarted face draws its first frame with them rather than with nothing while the phone and
+ * the calendar provider are asked again. It is read with a single read of a few hundred bytes,
+ * and written only when its contents change (the phone re-sends the same forecast, and the same
+ * calendar is queried again, every time the face becomes visible), to a temporary file that is
+ * then renamed over the old one, so a crash mid-write leaves the old snapshot intact.
+ *
+ * <p>Format (big-endian), version 1:
+ * <pre>
+ *   int    magic, "DLWS"
+ *   byte   version
+ *   byte   flags: 1 if a forecast follows, 2 if a calendar index follows
+ *   short  forecast length n, then n bytes of {@link WeatherPayload} (if flag 1)
+ *          calendar index (if flag 2):
+ *   long     refresh time, epoch milliseconds
+ *   label    placeholder
+ *   byte     instance count n, then n times: long begin, long end, label
+ *   int    CRC-32 of everything before it
+ * </pre>
+ * A label is a byte length n (at most {@link CalendarLabels#MAX_LABEL_LENGTH}), n UTF-16 chars
+ * and its float width. Fetch times travel inside the
+ * forecast; the calendar index carries the time it goes stale.
+ *
+ * <p>Safe to use from any thread.
+ */
+final class WarmStart {
+    static final String FILE_NAME = "warm_start";
+
+    private static final int MAGIC = 0x444c5753;
+    private static final int VERSION = 1;
+    private static final int FLAG_WEATHER = 1;
+    private static final int FLAG_CALENDAR = 2;
+    /* Far more than a snapshot needs; anything bigger isn't one. */
+    private static final int MAX_SIZE = 4096;
+
+    private final File mFile;
+    private final File mTempFile;
+
+    /* Guarded by this. What the file holds, so an unchanged snapshot isn't written again. */
+    private byte[] mSaved;
+
+    WarmStart(File file) {
+        mFile = file;
+        mTempFile = new File(file.getPath() + ".tmp");
+    }
+
+    /**
+     * Publishes the snapshot's forecast and calendar index to inputs, for whichever of them
+     * inputs doesn't already have. Returns false if there is no readable snapshot.
+     */
+    synchronized boolean restore(FaceInputStore inputs) {
+        byte[] data = read();
+        if (data == null) {
+            return false;
+        }
+        ByteBuffer in = ByteBuffer.wrap(data, 0, data.length - 4);
+        WeatherPayload weather = null;
+        CalendarIndex calendar = CalendarIndex.EMPTY;
+        try {
+            if (in.getInt() != MAGIC || in.get() != VERSION) {
+                return false;
+            }
+            int flags = in.get();
+            if ((flags & FLAG_WEATHER) != 0) {
+                int length = in.getShort() & 0xffff;
+                ByteBuffer payload = in.slice();
+                payload.limit(length);
+                in.position(in.position() + length);
+                weather = new WeatherPayload();
+                if (!weather.decode(payload)) {
+                    return false;
+                }
+            }
+            if ((flags & FLAG_CALENDAR) != 0) {
+                calendar = CalendarIndex.decode(in);
+                if (calendar == null) {
+                    return false;
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            return false;
+        }
+
+        FaceInputs current = inputs.get();
+        if (weather != null && current.weather == null) {
+            inputs.setWeather(weather);
+        }
+        if (calendar != CalendarIndex.EMPTY && current.calendar == CalendarIndex.EMPTY) {
+            inputs.setCalendar(calendar);
+        }
+        mSaved = data;
+        return true;
+    }
+
+    /**
+     * Writes the forecast and calendar index of inputs, unless the file already holds the same.
+     * Returns whether it wrote anything.
+     */
+    synchronized boolean save(FaceInputs inputs) throws IOException {
+        int flags = 0;
+        int size = 4 + 1 + 1 + 4;
+        if (inputs.weather != null) {
+            flags |= FLAG_WEATHER;
+            size += 2 + inputs.weather.encodedSize();
+        }
+        if (inputs.calendar != CalendarIndex.EMPTY) {
+            flags |= FLAG_CALENDAR;
+            size += inputs.calendar.encodedSize();
+        }
+        ByteBuffer out = ByteBuffer.allocate(size);
+        out.putInt(MAGIC);
+        out.put((byte) VERSION);
+        out.put((byte) flags);
+        if (inputs.weather != null) {
+            out.putShort((short) inputs.weather.encodedSize());
+            inputs.weather.encode(out);
+        }
+        if (inputs.calendar != CalendarIndex.EMPTY) {
+            inputs.calendar.encode(out);
+        }
+        out.putInt(crc(out.array(), out.position()));
+        if (Arrays.equals(out.array(), mSaved)) {
+            return false;
+        }
+
+        FileOutputStream stream = new FileOutputStream(mTempFile);
+        try {
+            stream.write(out.array());
+            stream.getFD().sync();
+        } finally {
+            stream.close();
+        }
+        if (!mTempFile.renameTo(mFile)) {
+            throw new IOException("Couldn't replace " + mFile);
+        }
+        mSaved = out.array();
+        return true;
+    }
+
+    /* The file's contents, or null if it's missing, too big or fails its checksum. */
+    private byte[] read() {
+        long length = mFile.length();
+        if (length < 4 || length > MAX_SIZE) {
+            return null;
+        }
+        byte[] data = new byte[(int) length];
+        try {
+            FileInputStream stream = new FileInputStream(mFile);
+            try {
+                int read = 0;
+                while (read < data.length) {
+                    int n = stream.read(data, read, data.length - read);
+                    if (n < 0) {
+                        return null;
+                    }
+                    read += n;
+                }
+            } finally {
+                stream.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        if (ByteBuffer.wrap(data).getInt(data.length - 4) != crc(data, data.length - 4)) {
+            return null;
+        }
+        return data;
+    }
+
+    private static int crc(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,171 @@
+package thjread.dilithium;
+
+import com.sun.management.ThreadMXBean;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class FaceFrameTest {
+    private static final long START = 1460127600000L;
+    private static final float SCALE = 320 / 360.0f;
+
+    /* Every field at a 320px surface, without paints, which only the atlas blit reads. */
+    private static final FaceLayout.Placed[] FIELDS =
+            new FaceLayout.Placed[FaceLayout.FIELDS.length];
+    static {
+        for (int i = 0; i < FIELDS.length; ++i) {
+            FIELDS[i] =
+                    new FaceLayout.Placed(FaceLayout.FIELDS[i], SCALE, null, null, null, null);
+        }
+    }
+
+    private static final CalendarDisplay.State CALENDAR = new CalendarDisplay.State(true,
+            new CalendarLabels.Label("1030", 60), new CalendarLabels.Label("1130", 62));
+
+    private final FaceFrame mFrame = new FaceFrame();
+    private final FaceClock mClock = new FaceClock(TimeZone.getTimeZone("UTC"));
+
+    /* Sums what was drawn, so that the walk can't be optimised away. */
+    private static class CountingTarget implements FaceFrame.Target {
+        int fields;
+        int chars;
+
+        @Override
+        public void drawField(FaceLayout.Placed field, FaceText text, float x, int state) {
+            fields++;
+            chars += text.length + (int) x;
+        }
+    }
+
+    private List<String> drawn(int state) {
+        final List<String> drawn = new ArrayList<>();
+        mFrame.draw(FIELDS, state, new FaceFrame.Target() {
+            @Override
+            public void drawField(FaceLayout.Placed field, FaceText text, float x, int state) {
+                drawn.add(text.toString());
+            }
+        });
+        return drawn;
+    }
+
+    @Test
+    public void drawsTheFieldsTheStateShows() {
+        // 15:00 UTC.
+        mClock.setTime(START + 5 * 60 * 1000 + 3 * 1000);
+        mFrame.setTime(mClock, true);
+        mFrame.setStatic(mClock, 80, 7, CalendarDisplay.HIDDEN);
+
+        int state = FaceFrame.state(false, false, false, 80, true, false);
+        assertEquals(Arrays.asList("15:05:03", "201604.08", "80", "ONLINE", "07"),
+                drawn(state));
+        // In ambient mode with the details hidden only the time and date are left.
+        state = FaceFrame.state(true, true, false, 80, true, false);
+        assertEquals(Arrays.asList("15:05:03", "201604.08"), drawn(state));
+
+        mFrame.setStatic(mClock, 100, 7, CALENDAR);
+        state = FaceFrame.state(false, false, false, 100, false, true);
+        assertEquals(Arrays.asList("15:05:03", "201604.08", "100", "OFFLINE", "1030", "1130"),
+                drawn(state));
+    }
+
+    @Test
+    public void calendarLabelsEndAtTheirField() {
+        mFrame.setStatic(mClock, 80, 7, CALENDAR);
+        final float[] ends = new float[2];
+        mFrame.draw(FIELDS, FaceLayout.STATE_SHOW_CALENDAR, new FaceFrame.Target() {
+            @Override
+            public void drawField(FaceLayout.Placed field, FaceText text, float x, int state) {
+                if (field.field.id == FaceLayout.FIELD_CALENDAR_FROM) {
+                    ends[0] = x + 60 * SCALE;
+                } else if (field.field.id == FaceLayout.FIELD_CALENDAR_TO) {
+                    ends[1] = x + 62 * SCALE;
+                }
+            }
+        });
+        assertEquals(180 * SCALE, ends[0], 1e-3f);
+        assertEquals(267 * SCALE, ends[1], 1e-3f);
+    }
+
+    @Test
+    public void stateBits() {
+        assertEquals(FaceLayout.STATE_FLAT_BACKGROUND | FaceLayout.STATE_BATTERY_FULL,
+                FaceFrame.state(false, true, true, 100, false, false));
+        // Burn-in protection only hides details in ambient mode, and ambient is never flat.
+        assertEquals(FaceLayout.STATE_AMBIENT | FaceLayout.STATE_DETAILS_HIDDEN
+                        | FaceLayout.STATE_CONNECTED | FaceLayout.STATE_SHOW_CALENDAR,
+                FaceFrame.state(true, true, true, 99, true, true));
+    }
+
+    /**
+     * Runs the engine's steady-state frame, from the input snapshot through the static layer's
+     * staleness check and text to walking the fields, over a simulated day at one frame a
+     * second, and fails if it allocates. The blits themselves are framework Canvas calls and
+     * can't run off the device.
+     */
+    @Test
+    public void steadyStateFrame_doesNotAllocate() throws Exception {
+        // Allocation counting is an extension of the HotSpot bean.
+        Object bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof ThreadMXBean);
+        ThreadMXBean threads = (ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        FaceInputStore inputs = new FaceInputStore();
+        WeatherPayload weather = new WeatherPayload();
+        weather.fetchTime = START;
+        weather.hourlyStart = START;
+        weather.hourCount = WeatherPayload.MAX_HOURS;
+        for (int i = 0; i < weather.hourCount; ++i) {
+            weather.hourlyTemperature[i] = 10 + i;
+        }
+        inputs.setWeather(weather);
+        inputs.setBatteryPercent(80);
+        PowerPolicy power = new PowerPolicy(30, 15, 5);
+        RenderedInputs rendered = new RenderedInputs();
+        CountingTarget target = new CountingTarget();
+
+        // Warm up so that the measured loop runs compiled code.
+        renderFrames(inputs, power, rendered, target, 200000);
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        renderFrames(inputs, power, rendered, target, 86400);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(target.fields > 0 && target.chars > 0);
+        assertTrue("Frames allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    /* What Dilithium.drawFace does for each frame, less the Canvas. */
+    private void renderFrames(FaceInputStore store, PowerPolicy power, RenderedInputs rendered,
+                              CountingTarget target, int frames) {
+        for (int i = 0; i < frames; ++i) {
+            long now = START + i * 1000L;
+            power.onFrame(now);
+            mClock.setTime(now);
+            FaceInputs inputs = store.get();
+            CalendarDisplay.State calendar =
+                    (i / 3600) % 2 == 0 ? CALENDAR : CalendarDisplay.HIDDEN;
+            int state = FaceFrame.state(false, false, power.flatBackground(),
+                    inputs.batteryPercent, inputs.connected, calendar.showCalendar);
+            if (rendered.update(now / 60000, inputs.batteryPercent,
+                    RenderedInputs.round(inputs.temperatureAt(now)), inputs.connected,
+                    calendar, 0xff000000, false)) {
+                mFrame.setStatic(mClock, inputs.batteryPercent, rendered.temperature, calendar);
+                mFrame.draw(FIELDS, state, target);
+            }
+            mFrame.setTime(mClock, power.showsSeconds());
+            mFrame.draw(FIELDS, state, target);
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package thjread.dilithium;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FaceInputStoreTest {
+    private static final int UPDATES = 200000;
+
+    @Test
+    public void updatesReplaceOnlyTheirField() {
+        FaceInputStore store = new FaceInputStore();
+        FaceInputs initial = store.get();
+        WeatherPayload weather = weather(12.5f);
+        store.setWeather(weather);
+        store.setBatteryPercent(80);
+        store.setConnected(false);
+
+        FaceInputs inputs = store.get();
+        assertSame(weather, inputs.weather);
+        assertEquals(12.5f, inputs.temperatureAt(0), 0);
+        assertEquals(80, inputs.batteryPercent);
+        assertEquals(false, inputs.connected);
+        assertSame(initial.calendar, inputs.calendar);
+        // Published snapshots are never modified.
+        assertNull(initial.weather);
+        assertEquals(0, initial.batteryPercent);
+        assertEquals(true, initial.connected);
+    }
+
+    @Test
+    public void settingTheSameValuePublishesNothing() {
+        FaceInputStore store = new FaceInputStore();
+        WeatherPayload weather = weather(12.5f);
+        assertTrue(store.setBatteryPercent(80));
+        assertTrue(store.setWeather(weather));
+        FaceInputs inputs = store.get();
+
+        assertFalse(store.setBatteryPercent(80));
+        assertFalse(store.setWeather(weather));
+        assertFalse(store.setConnected(true));
+        assertFalse(store.setCalendar(inputs.calendar));
+        assertSame(inputs, store.get());
+    }
+
+    @Test
+    public void concurrentUpdatesAreNotLostOrTorn() throws Throwable {
+        final FaceInputStore store = new FaceInputStore();
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicBoolean writersDone = new AtomicBoolean();
+
+        List<Thread> writers = new ArrayList<>();
+        writers.add(new Thread(new Writer(start, failure) {
+            @Override
+            void update(int i) {
+                store.setWeather(weather(i));
+            }
+        }));
+        writers.add(new Thread(new Writer(start, failure) {
+            @Override
+            void update(int i) {
+                store.setBatteryPercent(i);
+            }
+        }));
+        writers.add(new Thread(new Writer(start, failure) {
+            @Override
+            void update(int i) {
+                store.setConnected(i % 2 == 0);
+            }
+        }));
+
+        // Each field only moves forward, so a reader that ever sees one go back has been handed
+        // a stale or half-written snapshot.
+        Thread reader = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    start.await();
+                    FaceInputs previous = store.get();
+                    while (true) {
+                        boolean done = writersDone.get();
+                        FaceInputs inputs = store.get();
+                        assertTrue(inputs.temperatureAt(0) >= previous.temperatureAt(0));
+                        assertTrue(inputs.batteryPercent >= previous.batteryPercent);
+                        previous = inputs;
+                        if (done) {
+                            break;
+                        }
+                    }
+                } catch (Throwable t) {
+                    failure.compareAndSet(null, t);
+                }
+            }
+        });
+
+        for (Thread writer : writers) {
+            writer.start();
+        }
+        reader.start();
+        start.countDown();
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        writersDone.set(true);
+        reader.join();
+
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+        FaceInputs inputs = store.get();
+        assertEquals(UPDATES - 1, inputs.temperatureAt(0), 0);
+        assertEquals(UPDATES - 1, inputs.batteryPercent);
+        assertEquals((UPDATES - 1) % 2 == 0, inputs.connected);
+    }
+
+    private static WeatherPayload weather(float temperature) {
+        WeatherPayload weather = new WeatherPayload();
+        weather.temperature = temperature;
+        return weather;
+    }
+
+    private abstract static class Writer implements Runnable {
+        private final CountDownLatch mStart;
+        private final AtomicReference<Throwable> mFailure;
+
+        Writer(CountDownLatch start, AtomicReference<Throwable> failure) {
+            mStart = start;
+            mFailure = failure;
+        }
+
+        abstract void update(int i);
+
+        @Override
+        public void run() {
+            try {
+                mStart.await();
+                for (int i = 0; i < UPDATES; ++i) {
+                    update(i);
+                }
+            } catch (Throwable t) {
+                mFailure.compareAndSet(null, t);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package thjread.dilithium;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FaceLayoutTest {
+    /* R.color.background and R.color.background2, which a tap switches between. */
+    private static final int[] FLAT_FILLS = {0xff000000, 0xff000088};
+
+    /* Perceived brightness, 0 to 1. */
+    private static float luma(int color) {
+        int r = (color >> 16) & 0xff, g = (color >> 8) & 0xff, b = color & 0xff;
+        return (0.299f * r + 0.587f * g + 0.114f * b) / 255;
+    }
+
+    @Test
+    public void primaryTextStandsOutFromTheFlatFillInEveryTier() {
+        int[] batteryLevels = {80, 25, 10};
+        int[] expectedTiers = {
+                PowerPolicy.TIER_NORMAL, PowerPolicy.TIER_SAVER, PowerPolicy.TIER_CRITICAL};
+        for (int i = 0; i < batteryLevels.length; ++i) {
+            PowerPolicy power = new PowerPolicy(30, 15, 5);
+            power.update(batteryLevels[i], false, 0);
+            assertEquals(expectedTiers[i], power.tier());
+            if (!power.flatBackground()) {
+                // The bitmap is light behind the time.
+                assertEquals(0xff000000, FaceLayout.color(FaceLayout.ROLE_PRIMARY, 0));
+                continue;
+            }
+            int primary = FaceLayout.color(FaceLayout.ROLE_PRIMARY,
+                    FaceLayout.STATE_FLAT_BACKGROUND);
+            for (int fill : FLAT_FILLS) {
+                assertTrue("tier " + power.tier() + " draws " + Integer.toHexString(primary)
+                                + " on " + Integer.toHexString(fill),
+                        Math.abs(luma(primary) - luma(fill)) > 0.5f);
+            }
+        }
+    }
+
+    @Test
+    public void detailsKeepTheirColourOnTheFlatFill() {
+        assertEquals(FaceLayout.color(FaceLayout.ROLE_DETAIL, 0),
+                FaceLayout.color(FaceLayout.ROLE_DETAIL, FaceLayout.STATE_FLAT_BACKGROUND));
+        assertEquals(FaceLayout.color(FaceLayout.ROLE_CALENDAR, 0),
+                FaceLayout.color(FaceLayout.ROLE_CALENDAR, FaceLayout.STATE_FLAT_BACKGROUND));
+    }
+
+    @Test
+    public void ambientDetailsDimOnlyBelowAFullBattery() {
+        int ambient = FaceLayout.STATE_AMBIENT;
+        int full = ambient | FaceLayout.STATE_BATTERY_FULL;
+        int bright = FaceLayout.color(FaceLayout.ROLE_DETAIL, 0);
+        assertEquals(bright, FaceLayout.color(FaceLayout.ROLE_DETAIL, full));
+        assertEquals(bright, FaceLayout.color(FaceLayout.ROLE_CALENDAR, full));
+        assertNotEquals(bright, FaceLayout.color(FaceLayout.ROLE_DETAIL, ambient));
+        assertNotEquals(bright, FaceLayout.color(FaceLayout.ROLE_CALENDAR, ambient));
+
+        // Calendar labels are white whenever the other details are hidden.
+        int hidden = FaceLayout.STATE_DETAILS_HIDDEN;
+        assertEquals(0xffffffff, FaceLayout.color(FaceLayout.ROLE_CALENDAR, ambient | hidden));
+        assertEquals(0xffffffff, FaceLayout.color(FaceLayout.ROLE_CALENDAR, full | hidden));
+    }
+}
@@ -0,0 +1,101 @@
+package thjread.dilithium;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PowerPolicyTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long START = 1460127600000L;
+
+    private final PowerPolicy mPolicy = new PowerPolicy(30, 15, 5);
+
+    private int tierAt(int batteryPercent) {
+        mPolicy.update(batteryPercent, false, START);
+        return mPolicy.tier();
+    }
+
+    @Test
+    public void dropsATierAtEachThreshold() {
+        assertEquals(PowerPolicy.TIER_NORMAL, tierAt(31));
+        assertEquals(PowerPolicy.TIER_SAVER, tierAt(30));
+        assertEquals(PowerPolicy.TIER_SAVER, tierAt(16));
+        assertEquals(PowerPolicy.TIER_CRITICAL, tierAt(15));
+    }
+
+    @Test
+    public void leavesATierOnlyWithAMargin() {
+        tierAt(15);
+        assertEquals(PowerPolicy.TIER_CRITICAL, tierAt(16));
+        assertEquals(PowerPolicy.TIER_CRITICAL, tierAt(19));
+        assertEquals(PowerPolicy.TIER_SAVER, tierAt(20));
+        assertEquals(PowerPolicy.TIER_SAVER, tierAt(31));
+        assertEquals(PowerPolicy.TIER_SAVER, tierAt(34));
+        assertEquals(PowerPolicy.TIER_NORMAL, tierAt(35));
+
+        // A big jump clears both margins at once.
+        tierAt(10);
+        assertEquals(PowerPolicy.TIER_SAVER, tierAt(33));
+        tierAt(10);
+        assertEquals(PowerPolicy.TIER_NORMAL, tierAt(80));
+    }
+
+    @Test
+    public void chargingIsAlwaysNormal() {
+        tierAt(10);
+        assertTrue(mPolicy.update(10, true, START));
+        assertEquals(PowerPolicy.TIER_NORMAL, mPolicy.tier());
+        assertFalse(mPolicy.update(11, true, START));
+        // Unplugged, it drops straight back.
+        assertTrue(mPolicy.update(11, false, START));
+        assertEquals(PowerPolicy.TIER_CRITICAL, mPolicy.tier());
+    }
+
+    @Test
+    public void savingTiersTickSlowerAndRefreshLess() {
+        tierAt(80);
+        assertTrue(mPolicy.showsSeconds());
+        assertFalse(mPolicy.flatBackground());
+        assertEquals(TimeUnit.SECONDS.toMillis(1), mPolicy.tickPeriod());
+        assertEquals(1, mPolicy.refreshScale());
+
+        tierAt(25);
+        assertFalse(mPolicy.showsSeconds());
+        assertTrue(mPolicy.flatBackground());
+        assertEquals(TimeUnit.MINUTES.toMillis(1), mPolicy.tickPeriod());
+        assertTrue(mPolicy.refreshScale() > 1);
+
+        int saverScale = mPolicy.refreshScale();
+        long saverDelay = mPolicy.calendarChangeDelay();
+        tierAt(5);
+        assertTrue(mPolicy.refreshScale() > saverScale);
+        assertTrue(mPolicy.calendarChangeDelay() > saverDelay);
+    }
+
+    @Test
+    public void recordsRatesPerTier() {
+        mPolicy.update(80, false, START);
+        for (int i = 0; i < 3600; ++i) {
+            mPolicy.onFrame(START + i * 1000);
+            if (i == 1800) {
+                mPolicy.onSend(START + i * 1000);
+            }
+        }
+        mPolicy.update(20, false, START + HOUR);
+        for (int i = 0; i < 120; ++i) {
+            mPolicy.onFrame(START + HOUR + i * 60 * 1000);
+        }
+
+        long now = START + 3 * HOUR;
+        assertEquals(HOUR, mPolicy.timeIn(PowerPolicy.TIER_NORMAL, now));
+        assertEquals(2 * HOUR, mPolicy.timeIn(PowerPolicy.TIER_SAVER, now));
+        assertEquals(3600, mPolicy.framesPerHour(PowerPolicy.TIER_NORMAL, now), 0);
+        assertEquals(1, mPolicy.sendsPerHour(PowerPolicy.TIER_NORMAL, now), 0);
+        assertEquals(60, mPolicy.framesPerHour(PowerPolicy.TIER_SAVER, now), 0);
+        assertEquals(0, mPolicy.framesPerHour(PowerPolicy.TIER_CRITICAL, now), 0);
+    }
+}
@@ -0,0 +1,173 @@
+package thjread.dilithium;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RefreshSchedulerTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    private static final long START = 1460127600000L;
+
+    private static class FakeClock implements Clock {
+        long time = START;
+
+        @Override
+        public long now() {
+            return time;
+        }
+    }
+
+    /* Always draws the middle of the jitter range, so waits are exact. */
+    private static class NoJitter extends Random {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public double nextDouble() {
+            return 0.5;
+        }
+    }
+
+    private final FakeClock mClock = new FakeClock();
+    private final RefreshScheduler mScheduler =
+            new RefreshScheduler(HOUR, mClock, new NoJitter());
+
+    /* A forecast fetched at fetchTime with a series of hours starting then. */
+    private static WeatherPayload forecast(long fetchTime, int hours) {
+        WeatherPayload weather = new WeatherPayload();
+        weather.fetchTime = fetchTime;
+        weather.hourlyStart = fetchTime;
+        weather.hourCount = hours;
+        return weather;
+    }
+
+    private static WeatherPayload forecast(long fetchTime) {
+        return forecast(fetchTime, WeatherPayload.MAX_HOURS);
+    }
+
+    @Test
+    public void asksAtOnceWithoutAForecast() {
+        assertTrue(mScheduler.isDue(1, true));
+        assertEquals(START, mScheduler.nextRequestAt(1, true));
+    }
+
+    @Test
+    public void staysQuietWhileThePhoneWouldStillPush() {
+        mScheduler.onData(forecast(START));
+        // The phone pushes again before less than MIN_COVERAGE of the 12 hours is left, so the
+        // watch waits that long and a grace period more before deciding it has stopped.
+        long silentUntil = START + WeatherPayload.MAX_HOURS * HOUR - WeatherPayload.MIN_COVERAGE;
+        for (; mClock.time < silentUntil + HOUR; mClock.time += MINUTE) {
+            assertFalse(mScheduler.isDue(1, true));
+        }
+        assertTrue(mScheduler.isDue(1, true));
+
+        // Pushes from the phone keep moving it on.
+        mScheduler.onData(forecast(mClock.time));
+        assertEquals(mClock.time + 7 * HOUR, mScheduler.nextRequestAt(1, true));
+    }
+
+    @Test
+    public void asksSoonerForAShortSeries() {
+        mScheduler.onData(forecast(START, 8));
+        assertEquals(START + 2 * HOUR + HOUR, mScheduler.nextRequestAt(1, true));
+        mScheduler.onData(forecast(START + 1, 0));
+        assertEquals(START + 1 + HOUR, mScheduler.nextRequestAt(1, true));
+    }
+
+    @Test
+    public void stretchesForLowBatteryAndAmbient() {
+        mScheduler.onData(forecast(START));
+        long silentUntil = START + 6 * HOUR;
+        assertEquals(silentUntil + HOUR, mScheduler.nextRequestAt(1, true));
+        assertEquals(silentUntil + 2 * HOUR, mScheduler.nextRequestAt(2, true));
+        assertEquals(silentUntil + 4 * HOUR, mScheduler.nextRequestAt(4, true));
+        assertEquals(silentUntil + 2 * HOUR, mScheduler.nextRequestAt(1, false));
+        // But not past the end of the series.
+        assertEquals(START + 12 * HOUR, mScheduler.nextRequestAt(4, false));
+    }
+
+    @Test
+    public void backsOffExponentiallyOnFailedSends() {
+        // Capped at the interval.
+        long[] expected = { 1, 2, 4, 8, 16, 32, 60, 60 };
+        long lastAttempt = 0;
+        for (long minutes : expected) {
+            mScheduler.onSendFailed();
+            lastAttempt = mClock.time;
+            assertEquals(lastAttempt + minutes * MINUTE, mScheduler.nextRequestAt(1, true));
+            mClock.time = mScheduler.nextRequestAt(1, true);
+        }
+        assertEquals(expected.length, mScheduler.failures());
+        // Which is longer on a low battery.
+        assertEquals(lastAttempt + 128 * MINUTE, mScheduler.nextRequestAt(4, true));
+
+        mScheduler.onData(forecast(mClock.time));
+        assertEquals(0, mScheduler.failures());
+        assertEquals(mClock.time + 7 * HOUR, mScheduler.nextRequestAt(1, true));
+    }
+
+    @Test
+    public void unansweredRequestsCountAsFailures() {
+        mScheduler.onSent();
+        assertFalse(mScheduler.isDue(1, true));
+        assertEquals(START + RefreshScheduler.REPLY_TIMEOUT_MS,
+                mScheduler.nextRequestAt(1, true));
+
+        mClock.time += RefreshScheduler.REPLY_TIMEOUT_MS;
+        assertEquals(1, mScheduler.failures());
+        assertEquals(START + MINUTE, mScheduler.nextRequestAt(1, true));
+        assertTrue(mScheduler.isDue(1, true));
+    }
+
+    @Test
+    public void answeredRequestsReset() {
+        mScheduler.onSendFailed();
+        mClock.time += MINUTE;
+        mScheduler.onSent();
+        mClock.time += 10 * 1000;
+        mScheduler.onData(forecast(mClock.time - 5 * 1000));
+
+        assertEquals(0, mScheduler.failures());
+        assertEquals(mClock.time - 5 * 1000 + 7 * HOUR, mScheduler.nextRequestAt(1, true));
+    }
+
+    @Test
+    public void aReplyWithNothingNewerBacksOff() {
+        mScheduler.onData(forecast(START));
+        mClock.time = START + 7 * HOUR;
+        mScheduler.onSent();
+        // The phone answers at once with the forecast the watch already has.
+        mScheduler.onData(forecast(START));
+        assertEquals(1, mScheduler.failures());
+        assertEquals(mClock.time + MINUTE, mScheduler.nextRequestAt(1, true));
+
+        // Reading the same forecast again without asking neither fails nor resets the backoff.
+        mScheduler.onData(forecast(START));
+        assertEquals(1, mScheduler.failures());
+        mScheduler.onData(forecast(START + HOUR));
+        assertEquals(0, mScheduler.failures());
+    }
+
+    @Test
+    public void jitterSpreadsWatchesButIsStableForOneWait() {
+        long earliest = Long.MAX_VALUE, latest = Long.MIN_VALUE;
+        Random seeds = new Random(42);
+        for (int i = 0; i < 100; ++i) {
+            RefreshScheduler scheduler =
+                    new RefreshScheduler(HOUR, mClock, new Random(seeds.nextLong()));
+            scheduler.onData(forecast(START));
+            long next = scheduler.nextRequestAt(1, true) - 6 * HOUR;
+            assertEquals(next, scheduler.nextRequestAt(1, true) - 6 * HOUR);
+            assertTrue(next >= START + HOUR * 9 / 10 && next < START + HOUR * 11 / 10);
+            earliest = Math.min(earliest, next);
+            latest = Math.max(latest, next);
+        }
+        assertTrue(latest - earliest > HOUR / 10);
+    }
+}
@@ -0,0 +1,45 @@
+package thjread.dilithium;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RenderedInputsTest {
+    private static final CalendarDisplay.State CALENDAR = CalendarDisplay.HIDDEN;
+
+    private final RenderedInputs mRendered = new RenderedInputs();
+
+    @Test
+    public void nothingIsShownBeforeTheFirstDraw() {
+        assertFalse(mRendered.showsBattery(0));
+        assertFalse(mRendered.showsTemperature(0));
+        assertTrue(mRendered.update(1, 0, 0, true, CALENDAR, 0, false));
+    }
+
+    @Test
+    public void onlyChangesThatShowAreStale() {
+        mRendered.update(1, 80, 12, true, CALENDAR, 0, false);
+        assertFalse(mRendered.update(1, 80, 12, true, CALENDAR, 0, false));
+
+        assertTrue(mRendered.showsBattery(80));
+        assertFalse(mRendered.showsBattery(79));
+        // Forecasts that round to the shown temperature don't need a frame.
+        assertTrue(mRendered.showsTemperature(12.4f));
+        assertTrue(mRendered.showsTemperature(11.5f));
+        assertFalse(mRendered.showsTemperature(12.5f));
+
+        assertTrue(mRendered.update(2, 80, 12, true, CALENDAR, 0, false));
+        assertTrue(mRendered.update(2, 80, 12, false, CALENDAR, 0, false));
+        assertTrue(mRendered.update(2, 80, 12, false, CALENDAR, 0, true));
+        assertFalse(mRendered.update(2, 80, 12, false, CALENDAR, 0, true));
+    }
+
+    @Test
+    public void invalidatingForcesARedraw() {
+        mRendered.update(1, 80, 12, true, CALENDAR, 0, false);
+        mRendered.invalidate();
+        assertFalse(mRendered.showsBattery(80));
+        assertTrue(mRendered.update(1, 80, 12, true, CALENDAR, 0, false));
+    }
+}
@@ -0,0 +1,156 @@
+package thjread.dilithium;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TickSchedulerTest {
+    private static final long SECOND = TimeUnit.SECONDS.toMillis(1);
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+    /* On a minute boundary. */
+    private static final long START = 1460127600000L;
+
+    /* Records what the scheduler asks of the engine. */
+    private static class FakeHost implements TickScheduler.Host {
+        final List<Integer> jobs = new ArrayList<>();
+        int redraws;
+        long wakeAt = Long.MAX_VALUE;
+
+        @Override
+        public void runJob(int job, long now) {
+            jobs.add(job);
+        }
+
+        @Override
+        public void redraw() {
+            redraws++;
+        }
+
+        @Override
+        public void wakeAt(long time) {
+            wakeAt = time;
+        }
+    }
+
+    private final FakeHost mHost = new FakeHost();
+    private final TickScheduler mTicks = new TickScheduler(mHost, SECOND);
+
+    /* Delivers the wakeups due up to time, as the engine's handler would. */
+    private void runUntil(long time) {
+        while (mHost.wakeAt <= time) {
+            long wakeAt = mHost.wakeAt;
+            // Delivering the message uses it up.
+            mHost.wakeAt = Long.MAX_VALUE;
+            mTicks.onWakeup(wakeAt);
+        }
+    }
+
+    @Test
+    public void interactiveRedrawsOncePerTickWhateverHappens() {
+        mTicks.setMode(TickScheduler.MODE_INTERACTIVE, START - 1);
+        assertEquals(START, mHost.wakeAt);
+
+        // A minute of the events that used to each call invalidate() or post a message: the time
+        // tick, a battery broadcast, a forecast push and a calendar load finishing in the same
+        // second, and a calendar transition.
+        runUntil(START);
+        mTicks.onTimeTick(START);
+        runUntil(START + 10 * SECOND + 300);
+        long now = START + 10 * SECOND + 300;
+        mTicks.markDirty(now);
+        mTicks.markDirty(now + 100);
+        mTicks.markDirty(now + 200);
+        mTicks.schedule(TickScheduler.JOB_CALENDAR_TRANSITION, START + 30 * SECOND + 500, now);
+        runUntil(START + MINUTE - 1);
+
+        assertEquals(60, mHost.redraws);
+        // The transition waited for the next tick rather than waking the face itself.
+        assertEquals(1, mHost.jobs.size());
+        assertEquals(START + MINUTE, mHost.wakeAt);
+
+        // Before, the same minute took 60 ticks, one transition message and the time tick
+        // (62 wakeups), each redrawing, plus the three events (65 redraws). Now the events and
+        // the transition ride on the ticks.
+        long later = START + MINUTE;
+        assertEquals(61, mTicks.lastMinute(TickScheduler.COUNT_WAKEUPS, later));
+        assertEquals(60, mTicks.lastMinute(TickScheduler.COUNT_REDRAWS, later));
+        assertEquals(3, mTicks.lastMinute(TickScheduler.COUNT_DIRTY, later));
+        assertEquals(1, mTicks.lastMinute(TickScheduler.COUNT_JOBS, later));
+    }
+
+    @Test
+    public void ambientWaitsForTheTimeTick() {
+        mTicks.setMode(TickScheduler.MODE_AMBIENT, START);
+        mTicks.markDirty(START + 5 * SECOND);
+        mTicks.schedule(TickScheduler.JOB_REQUEST_WEATHER, START + 20 * SECOND,
+                START + 5 * SECOND);
+        mTicks.schedule(TickScheduler.JOB_LOAD_CALENDAR, START + 40 * SECOND,
+                START + 5 * SECOND);
+        assertEquals(Long.MAX_VALUE, mHost.wakeAt);
+        assertEquals(0, mHost.redraws);
+
+        mTicks.onTimeTick(START + MINUTE);
+        assertEquals(1, mHost.redraws);
+        assertEquals(2, mHost.jobs.size());
+
+        // The next one redraws for the new minute even with nothing else to do.
+        mTicks.onTimeTick(START + 2 * MINUTE);
+        assertEquals(2, mHost.redraws);
+        assertEquals(1, mTicks.lastMinute(TickScheduler.COUNT_WAKEUPS, START + 2 * MINUTE));
+    }
+
+    @Test
+    public void hiddenWakesOnlyForJobsAndSharesWakeups() {
+        mTicks.markDirty(START);
+        mTicks.schedule(TickScheduler.JOB_LOAD_CALENDAR, START + 1200, START);
+        mTicks.schedule(TickScheduler.JOB_REQUEST_WEATHER, START + 1700, START);
+        assertEquals(START + 2 * SECOND, mHost.wakeAt);
+
+        runUntil(START + MINUTE);
+        assertEquals(2, mHost.jobs.size());
+        assertEquals(0, mHost.redraws);
+        assertEquals(1, mTicks.lastMinute(TickScheduler.COUNT_WAKEUPS, START + MINUTE));
+        assertEquals(Long.MAX_VALUE, mHost.wakeAt);
+    }
+
+    @Test
+    public void overdueJobsRunStraightAwayWhenHidden() {
+        mTicks.schedule(TickScheduler.JOB_LOAD_CALENDAR, START - SECOND, START + 300);
+        assertEquals(START + 300, mHost.wakeAt);
+        runUntil(START + 300);
+        assertEquals(1, mHost.jobs.size());
+    }
+
+    @Test
+    public void cancelledJobsDontRun() {
+        mTicks.setMode(TickScheduler.MODE_INTERACTIVE, START);
+        mTicks.schedule(TickScheduler.JOB_REQUEST_WEATHER, START + 500, START);
+        mTicks.cancel(TickScheduler.JOB_REQUEST_WEATHER, START + 100);
+        runUntil(START + 5 * SECOND);
+        assertTrue(mHost.jobs.isEmpty());
+        assertEquals(5, mHost.redraws);
+    }
+
+    @Test
+    public void aLongerPeriodTicksLessOften() {
+        mTicks.setMode(TickScheduler.MODE_INTERACTIVE, START);
+        mTicks.setPeriod(MINUTE, START + 100);
+        assertEquals(START + MINUTE, mHost.wakeAt);
+        runUntil(START + 10 * MINUTE);
+        assertEquals(10, mHost.redraws);
+    }
+
+    @Test
+    public void countsOnlyTheLastCompleteMinute() {
+        mTicks.markDirty(START);
+        mTicks.markDirty(START + MINUTE);
+        assertEquals(1, mTicks.lastMinute(TickScheduler.COUNT_DIRTY, START + MINUTE));
+        // A minute with nothing in it counts as nothing.
+        assertEquals(0, mTicks.lastMinute(TickScheduler.COUNT_DIRTY, START + 3 * MINUTE));
+    }
+}
@@ -0,0 +1,161 @@
+package thjread.dilithium;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WarmStartTest {
+    private static final long HOUR = 3600 * 1000;
+    private static final long START = 1460127600000L;
+
+    @Rule
+    public final TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File file() {
+        return new File(mFolder.getRoot(), WarmStart.FILE_NAME);
+    }
+
+    private static WeatherPayload weather(float temperature) {
+        WeatherPayload weather = new WeatherPayload();
+        weather.fetchTime = START;
+        weather.temperature = temperature;
+        weather.hourlyStart = START + HOUR;
+        weather.hourCount = 2;
+        weather.hourlyTemperature[0] = temperature + 1;
+        weather.hourlyTemperature[1] = temperature + 2;
+        return weather;
+    }
+
+    /* An index with one event from START to START + HOUR and one an hour after it. */
+    private static CalendarIndex calendar(String first, String second) {
+        ByteBuffer out = ByteBuffer.allocate(256);
+        out.putLong(START + 12 * HOUR);
+        putLabel(out, "__", 20);
+        out.put((byte) 2);
+        out.putLong(START);
+        out.putLong(START + HOUR);
+        putLabel(out, first, 40);
+        out.putLong(START + 2 * HOUR);
+        out.putLong(START + 3 * HOUR);
+        putLabel(out, second, 41);
+        out.flip();
+        return CalendarIndex.decode(out);
+    }
+
+    private static void putLabel(ByteBuffer out, String text, float width) {
+        out.put((byte) text.length());
+        for (int i = 0; i < text.length(); ++i) {
+            out.putChar(text.charAt(i));
+        }
+        out.putFloat(width);
+    }
+
+    private static FaceInputs inputs(WeatherPayload weather, CalendarIndex calendar) {
+        FaceInputStore store = new FaceInputStore();
+        store.setWeather(weather);
+        store.setCalendar(calendar);
+        return store.get();
+    }
+
+    @Test
+    public void restoresWhatWasSaved() throws Exception {
+        assertTrue(new WarmStart(file()).save(
+                inputs(weather(12.5f), calendar("Free", "Sprt"))));
+
+        FaceInputStore store = new FaceInputStore();
+        assertTrue(new WarmStart(file()).restore(store));
+        FaceInputs inputs = store.get();
+        assertEquals(START, inputs.weather.fetchTime);
+        assertEquals(12.5f, inputs.temperatureAt(START), 0);
+        assertEquals(14.5f, inputs.temperatureAt(START + 2 * HOUR), 0.01f);
+
+        CalendarDisplay display = new CalendarDisplay();
+        assertEquals(START + 2 * HOUR, inputs.calendar.select(START + HOUR / 2, display));
+        assertEquals("Free", display.from.text);
+        assertEquals(40, display.from.width, 0);
+        assertEquals("Sprt", display.to.text);
+        assertEquals("__", display.placeholder.text);
+        assertEquals(START + 12 * HOUR, inputs.calendar.refreshAt);
+    }
+
+    @Test
+    public void writesOnlyWhenTheContentsChange() throws Exception {
+        WarmStart warmStart = new WarmStart(file());
+        assertTrue(warmStart.save(inputs(weather(12.5f), calendar("Free", "Sprt"))));
+        // The same forecast and calendar again, as new objects.
+        assertFalse(warmStart.save(inputs(weather(12.5f), calendar("Free", "Sprt"))));
+        assertTrue(warmStart.save(inputs(weather(13.5f), calendar("Free", "Sprt"))));
+        assertTrue(warmStart.save(inputs(weather(13.5f), calendar("Free", "Gym"))));
+
+        // Nor after restoring, until something changes.
+        WarmStart restarted = new WarmStart(file());
+        assertTrue(restarted.restore(new FaceInputStore()));
+        assertFalse(restarted.save(inputs(weather(13.5f), calendar("Free", "Gym"))));
+        assertFalse(new File(file().getPath() + ".tmp").exists());
+    }
+
+    @Test
+    public void savesWhicheverInputsThereAre() throws Exception {
+        assertTrue(new WarmStart(file()).save(inputs(null, CalendarIndex.EMPTY)));
+        FaceInputStore store = new FaceInputStore();
+        assertTrue(new WarmStart(file()).restore(store));
+        assertNull(store.get().weather);
+        assertSame(CalendarIndex.EMPTY, store.get().calendar);
+
+        assertTrue(new WarmStart(file()).save(inputs(weather(3), CalendarIndex.EMPTY)));
+        assertTrue(new WarmStart(file()).restore(store));
+        assertEquals(3, store.get().temperatureAt(START), 0);
+    }
+
+    @Test
+    public void ignoresAMissingOrCorruptFile() throws Exception {
+        FaceInputStore store = new FaceInputStore();
+        FaceInputs initial = store.get();
+        assertFalse(new WarmStart(file()).restore(store));
+
+        new WarmStart(file()).save(inputs(weather(12.5f), calendar("Free", "Sprt")));
+        RandomAccessFile corrupt = new RandomAccessFile(file(), "rw");
+        try {
+            corrupt.seek(10);
+            int b = corrupt.read();
+            corrupt.seek(10);
+            corrupt.write(b ^ 1);
+        } finally {
+            corrupt.close();
+        }
+        assertFalse(new WarmStart(file()).restore(store));
+        assertSame(initial, store.get());
+    }
+
+    @Test
+    public void rejectsLabelsTooLongToDraw() {
+        String tooLong = "Departmental seminar";
+        assertTrue(tooLong.length() > CalendarLabels.MAX_LABEL_LENGTH);
+        assertNull(calendar("Free", tooLong));
+        assertNotNull(calendar("Free", tooLong.substring(0, CalendarLabels.MAX_LABEL_LENGTH)));
+    }
+
+    @Test
+    public void keepsInputsThatArrivedFirst() throws Exception {
+        new WarmStart(file()).save(inputs(weather(12.5f), calendar("Free", "Sprt")));
+
+        FaceInputStore store = new FaceInputStore();
+        WeatherPayload newer = weather(20);
+        store.setWeather(newer);
+        assertTrue(new WarmStart(file()).restore(store));
+        assertSame(newer, store.get().weather);
+        assertNotNull(store.get().calendar);
+        assertEquals(START + 12 * HOUR, store.get().calendar.refreshAt);
+    }
+}
@@ -0,0 +1,93 @@
+package thjread.dilithium;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class WeatherPayloadTest {
+    private static final long HOUR = 3600 * 1000;
+    private static final long FETCH = 1460127600000L;
+
+    private static WeatherPayload forecast() {
+        WeatherPayload payload = new WeatherPayload();
+        payload.fetchTime = FETCH + 20 * 60 * 1000;
+        payload.temperature = 8.3f;
+        payload.precipProbability = 40;
+        payload.precipIntensity = 0.42f;
+        payload.sunrise = FETCH - 2 * HOUR;
+        payload.sunset = FETCH + 11 * HOUR;
+        payload.hourlyStart = FETCH;
+        payload.hourCount = WeatherPayload.MAX_HOURS;
+        for (int i = 0; i < WeatherPayload.MAX_HOURS; ++i) {
+            payload.hourlyTemperature[i] = 8 + i * 0.7f - (i > 6 ? 3 : 0);
+            payload.hourlyPrecipProbability[i] = (i * 13) % 101;
+        }
+        return payload;
+    }
+
+    @Test
+    public void roundTrips() {
+        WeatherPayload sent = forecast();
+        byte[] data = sent.encode();
+        assertEquals(sent.encodedSize(), data.length);
+        assertTrue(data.length < 50);
+
+        WeatherPayload received = new WeatherPayload();
+        assertTrue(received.decode(ByteBuffer.wrap(data)));
+        assertEquals(sent.fetchTime, received.fetchTime);
+        assertEquals(sent.temperature, received.temperature, 0.05);
+        assertEquals(sent.precipProbability, received.precipProbability);
+        assertEquals(sent.precipIntensity, received.precipIntensity, 0.005);
+        assertEquals(sent.sunrise, received.sunrise);
+        assertEquals(sent.sunset, received.sunset);
+        assertEquals(sent.hourlyStart, received.hourlyStart);
+        assertEquals(sent.hourCount, received.hourCount);
+        for (int i = 0; i < sent.hourCount; ++i) {
+            assertEquals(sent.hourlyTemperature[i], received.hourlyTemperature[i], 0.05);
+            assertEquals(sent.hourlyPrecipProbability[i], received.hourlyPrecipProbability[i]);
+        }
+    }
+
+    @Test
+    public void roundTripsWithoutHours() {
+        WeatherPayload sent = new WeatherPayload();
+        sent.fetchTime = FETCH;
+        sent.temperature = -12.5f;
+
+        WeatherPayload received = new WeatherPayload();
+        assertTrue(received.decode(ByteBuffer.wrap(sent.encode())));
+        assertEquals(-12.5f, received.temperature, 0);
+        assertEquals(0, received.hourCount);
+    }
+
+    @Test
+    public void rejectsTruncatedAndUnknownMessages() {
+        byte[] data = forecast().encode();
+        WeatherPayload received = new WeatherPayload();
+        for (int length = 0; length < data.length; ++length) {
+            assertFalse(received.decode(ByteBuffer.wrap(Arrays.copyOf(data, length))));
+        }
+        data[0] = WeatherPayload.VERSION + 1;
+        assertFalse(received.decode(ByteBuffer.wrap(data)));
+    }
+
+    @Test
+    public void temperatureFollowsTheHourlySeries() {
+        WeatherPayload payload = forecast();
+        // The measured temperature for the first hour after the fetch.
+        assertEquals(8.3f, payload.temperatureAt(payload.fetchTime), 0);
+        assertEquals(8.3f, payload.temperatureAt(payload.fetchTime + HOUR - 1), 0);
+        // Then the forecast, interpolated between hours.
+        assertEquals(payload.hourlyTemperature[2], payload.temperatureAt(FETCH + 2 * HOUR), 0);
+        assertEquals((payload.hourlyTemperature[2] + payload.hourlyTemperature[3]) / 2,
+                payload.temperatureAt(FETCH + 2 * HOUR + HOUR / 2), 0.001);
+        // And the last hour beyond the end of it.
+        assertEquals(payload.hourlyTemperature[WeatherPayload.MAX_HOURS - 1],
+                payload.temperatureAt(FETCH + 48 * HOUR), 0);
+    }
+}
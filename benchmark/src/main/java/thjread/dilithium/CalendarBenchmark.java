@@ -0,0 +1,78 @@
+package thjread.dilithium;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The calendar decision, compiled when the calendar changes and advanced at its transitions, and
+ * the label shortening run for each event the calendar query returns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CalendarBenchmark {
+    private static final String[] DESCRIPTIONS = {
+            "Study Room", "Sports Hall", "Maths Lecture", "Lab", "Supervision with Dr Smith",
+            "CS IA Group Project", "Lunch", "Part II Physics Practical", "Go to town", "Gym",
+    };
+
+    private final CalendarDisplay mDisplay = new CalendarDisplay();
+    private final Map<String, String> mDictionary = CalendarLabels.parseDictionary(
+            new String[] { "Study Room=Free", "Sports Hall=Sprt" });
+    /* Stands in for Paint.measureText, which needs Android. */
+    private final CalendarLabels mLabels = new CalendarLabels(mDictionary,
+            new CalendarLabels.Measurer() {
+                @Override
+                public float measure(String text) {
+                    return text.length() * 12.5f;
+                }
+            });
+    private long mNow;
+    private int mIndex;
+
+    @Setup
+    public void setUp() {
+        // An event that ended 5 minutes ago and one that starts in 20, so both labels show.
+        mNow = 1460127600000L;
+        mDisplay.from = mLabels.get("Lab");
+        mDisplay.to = mLabels.get("Gym session");
+        mDisplay.placeholder = mLabels.placeholder();
+        mDisplay.latestFrom = mNow - TimeUnit.MINUTES.toMillis(5);
+        mDisplay.fromStart = mNow - TimeUnit.MINUTES.toMillis(65);
+        mDisplay.earliestTo = mNow + TimeUnit.MINUTES.toMillis(20);
+        mDisplay.compile(mNow);
+    }
+
+    @Benchmark
+    public long compile() {
+        mDisplay.compile(mNow);
+        return mDisplay.nextTransition();
+    }
+
+    @Benchmark
+    public boolean advance() {
+        // A tick between transitions, which is what almost every tick is.
+        return mDisplay.advance(mNow);
+    }
+
+    @Benchmark
+    public String abbreviate() {
+        mIndex = (mIndex + 1) % DESCRIPTIONS.length;
+        return CalendarLabels.abbreviate(DESCRIPTIONS[mIndex], mDictionary);
+    }
+
+    @Benchmark
+    public CalendarLabels.Label cachedLabel() {
+        // Recurring events: every description is in the cache after the first round.
+        mIndex = (mIndex + 1) % DESCRIPTIONS.length;
+        return mLabels.get(DESCRIPTIONS[mIndex]);
+    }
+}
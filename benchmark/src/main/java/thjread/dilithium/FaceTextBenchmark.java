@@ -0,0 +1,61 @@
+package thjread.dilithium;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-frame time and date text: FaceClock and FaceText as the face uses them, against the
+ * Calendar and String.format code they replaced.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FaceTextBenchmark {
+    private static final TimeZone LONDON = TimeZone.getTimeZone("Europe/London");
+
+    private final FaceClock mClock = new FaceClock(LONDON);
+    private final Calendar mCalendar = Calendar.getInstance(LONDON);
+    private final FaceText mTimeText = new FaceText(8);
+    private final FaceText mDateText = new FaceText(10);
+
+    /* One second per invocation, starting in April 2016. */
+    private long mMillis = 1460127600000L;
+
+    @Benchmark
+    public int timeText() {
+        mMillis += 1000;
+        mClock.setTime(mMillis);
+        return mTimeText.setTime(mClock.hour, mClock.minute, mClock.second, true).length;
+    }
+
+    @Benchmark
+    public int dateText() {
+        mMillis += 1000;
+        mClock.setTime(mMillis);
+        return mDateText.setDate(mClock.year, mClock.month, mClock.dayOfMonth).length;
+    }
+
+    @Benchmark
+    public String timeTextWithCalendar() {
+        mMillis += 1000;
+        mCalendar.setTimeInMillis(mMillis);
+        return String.format("%02d:%02d:%02d", mCalendar.get(Calendar.HOUR_OF_DAY),
+                mCalendar.get(Calendar.MINUTE), mCalendar.get(Calendar.SECOND));
+    }
+
+    @Benchmark
+    public String dateTextWithCalendar() {
+        mMillis += 1000;
+        mCalendar.setTimeInMillis(mMillis);
+        return String.format("%04d%02d.%02d", mCalendar.get(Calendar.YEAR),
+                mCalendar.get(Calendar.MONTH) + 1, mCalendar.get(Calendar.DAY_OF_MONTH));
+    }
+}
@@ -0,0 +1,83 @@
+package thjread.dilithium;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The weather path: decoding a forecast.io response on the phone, both with ForecastDecoder and
+ * with the Gson binding it replaced, and encoding and decoding the message sent to the watch.
+ * forecast.json is a full response (currently, 61 minutely, 49 hourly and 8 daily points) of the
+ * shape the API returns, and the message is built from it, so it carries a full 12-hour series.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WeatherBenchmark {
+    private final Gson mGson = new Gson();
+    private String mForecast;
+    private WeatherPayload mPayload;
+    private byte[] mEncoded;
+    private final WeatherPayload mDecoded = new WeatherPayload();
+
+    @Setup
+    public void setUp() throws IOException {
+        InputStream in = WeatherBenchmark.class.getResourceAsStream("/forecast.json");
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) != -1) {
+                out.write(buffer, 0, n);
+            }
+            mForecast = out.toString("UTF-8");
+        } finally {
+            in.close();
+        }
+        // As fetched ten minutes after the response's first hour.
+        Forecast forecast = decodeForecast();
+        long now = TimeUnit.SECONDS.toMillis(forecast.hourlyTime[0])
+                + TimeUnit.MINUTES.toMillis(10);
+        forecast.fetchedAt = now;
+        mPayload = WeatherPayloadBuilder.build(forecast, now);
+        mEncoded = mPayload.encode();
+    }
+
+    /** The reflective Gson binding WeatherService used before ForecastDecoder. */
+    @Benchmark
+    public GsonForecast.WeatherData parseForecast() throws IOException {
+        // The same adapter call GsonConverterFactory makes on the response body.
+        return mGson.getAdapter(GsonForecast.WeatherData.class)
+                .fromJson(new StringReader(mForecast));
+    }
+
+    @Benchmark
+    public Forecast decodeForecast() throws IOException {
+        return ForecastDecoder.decode(new StringReader(mForecast));
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public byte[] encodePayload() {
+        return mPayload.encode();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public boolean decodePayload() {
+        return mDecoded.decode(ByteBuffer.wrap(mEncoded));
+    }
+}
@@ -0,0 +1,158 @@
+package thjread.dilithium;
+
+import thjread.dilithium.CalendarLabels.Label;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether the face shows the calendar, and which labels, from the event ending most
+ * recently before now and the next event to start. The calendar is shown until 15 minutes after
+ * the current event ends, and from 30 minutes before the next one starts (unless the current one
+ * started less than 10 minutes ago).
+ *
+ * <p>The decision only changes at a few instants derived from the inputs. {@link #compile} works
+ * them out in advance as a timeline of states, so that per frame the face just reads
+ * {@link #state}, and {@link #advance} moves along the timeline when a transition is due.
+ */
+final class CalendarDisplay {
+    private static final long MINUTE = TimeUnit.MINUTES.toMillis(1);
+
+    /* How long the label of an event stays up after it ends. */
+    static final long SHOW_AFTER_END = MINUTE*15;
+    /* How long before an event starts its label goes up. */
+    private static final long SHOW_BEFORE_START = MINUTE*30;
+    /* How long after the current event starts the next one can be shown. */
+    private static final long HIDE_AFTER_START = MINUTE*10;
+
+    /** What the face shows of the calendar. Never modified, so it can be compared by identity. */
+    static final class State {
+        final boolean showCalendar;
+        final Label from;
+        final Label to;
+
+        State(boolean showCalendar, Label from, Label to) {
+            this.showCalendar = showCalendar;
+            this.from = from;
+            this.to = to;
+        }
+
+        boolean sameAs(State other) {
+            return showCalendar == other.showCalendar && from.text.equals(other.from.text)
+                    && to.text.equals(other.to.text);
+        }
+    }
+
+    static final State HIDDEN = new State(false, Label.NONE, Label.NONE);
+
+    /* Inputs, set from the calendar query. Times are -1 when there is no such event. */
+    Label from = Label.NONE;
+    Label to = Label.NONE;
+    /* Shown in place of a missing label while the calendar is up. */
+    Label placeholder = Label.NONE;
+    long latestFrom;
+    long earliestTo;
+    long fromStart;
+
+    /** The state for the current time, as of the last compile() or advance(). */
+    State state = HIDDEN;
+
+    /* The timeline: mStates[i] applies from mTimes[i] on. One transition per rule at most. */
+    private final long[] mTimes = new long[4];
+    private final State[] mStates = new State[4];
+    private int mCount;
+    private int mNext;
+
+    /** Rebuilds the timeline from the inputs, starting at now. */
+    void compile(long now) {
+        State current = evaluate(now);
+        if (!current.sameAs(state)) {
+            state = current;
+        }
+
+        // The instants at which one of the comparisons in evaluate() flips.
+        mCount = 0;
+        addCandidate(latestFrom + SHOW_AFTER_END, now);
+        addCandidate(earliestTo - SHOW_BEFORE_START + 1, now);
+        addCandidate(fromStart + HIDE_AFTER_START + 1, now);
+        addCandidate(earliestTo + 1, now);
+
+        // Keep only the instants at which the state actually changes.
+        int count = mCount;
+        mCount = 0;
+        State previous = state;
+        for (int i = 0; i < count; ++i) {
+            if (i > 0 && mTimes[i] == mTimes[i - 1]) {
+                continue;
+            }
+            State next = evaluate(mTimes[i]);
+            if (!next.sameAs(previous)) {
+                mTimes[mCount] = mTimes[i];
+                mStates[mCount] = next;
+                mCount++;
+                previous = next;
+            }
+        }
+        for (int i = mCount; i < mStates.length; ++i) {
+            mStates[i] = null;
+        }
+        mNext = 0;
+    }
+
+    /** Moves {@link #state} along the timeline to now. Returns whether it changed. */
+    boolean advance(long now) {
+        State previous = state;
+        while (mNext < mCount && mTimes[mNext] <= now) {
+            state = mStates[mNext++];
+        }
+        return state != previous;
+    }
+
+    /** The next instant at which {@link #state} changes, or Long.MAX_VALUE if it doesn't. */
+    long nextTransition() {
+        return mNext < mCount ? mTimes[mNext] : Long.MAX_VALUE;
+    }
+
+    /* Inserts a candidate transition in sorted order if it is still to come. */
+    private void addCandidate(long time, long now) {
+        if (time <= now) {
+            return;
+        }
+        int i = mCount++;
+        while (i > 0 && mTimes[i - 1] > time) {
+            mTimes[i] = mTimes[i - 1];
+            i--;
+        }
+        mTimes[i] = time;
+    }
+
+    private State evaluate(long now) {
+        boolean showCalendar = false;
+        Label fromLabel = Label.NONE, toLabel = Label.NONE;
+
+        if (latestFrom > now - SHOW_AFTER_END && !from.isEmpty()) {
+            showCalendar = true;
+            fromLabel = from;
+        }
+        if (earliestTo < now + SHOW_BEFORE_START &&
+                fromStart < now - HIDE_AFTER_START &&
+                !to.isEmpty()) {
+            showCalendar = true;
+            toLabel = to;
+        }
+
+        if (earliestTo < now && !to.isEmpty()) {
+            fromLabel = to;
+            toLabel = Label.NONE;
+        }
+
+        if (!showCalendar) {
+            return HIDDEN;
+        }
+        if (fromLabel.isEmpty()) {
+            fromLabel = placeholder;
+        } else if (toLabel.isEmpty()) {
+            toLabel = placeholder;
+        }
+        return new State(true, fromLabel, toLabel);
+    }
+}
@@ -0,0 +1,128 @@
+package thjread.dilithium;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Shortens calendar event descriptions to the few characters that fit on the face. Descriptions
+ * in the abbreviation dictionary map to a fixed label; anything else keeps as many whole leading
+ * words as fit. Labels are measured once and kept in a small LRU cache keyed by description, so
+ * recurring events cost a map lookup. Safe to use from any thread.
+ */
+final class CalendarLabels {
+    /** Measures text as drawn on the face, in the 360px layout units of {@link FaceLayout}. */
+    interface Measurer {
+        float measure(String text);
+    }
+
+    /** A label and its measured width, for right-aligning it without padding. */
+    static final class Label {
+        static final Label NONE = new Label("", 0);
+
+        final String text;
+        final float width;
+
+        Label(String text, float width) {
+            this.text = text;
+            this.width = width;
+        }
+
+        boolean isEmpty() {
+            return text.length() == 0;
+        }
+    }
+
+    /* The most characters the face has room to draw for a label, dictionary labels included. */
+    static final int MAX_LABEL_LENGTH = 16;
+
+    private static final String PLACEHOLDER = "__";
+    private static final int MAX_LENGTH = 4;
+    private static final int CACHE_SIZE = 32;
+
+    private final Map<String, String> mDictionary;
+    private final Measurer mMeasurer;
+    private Label mPlaceholder;
+    private final Map<String, Label> mCache =
+            new LinkedHashMap<String, Label>(CACHE_SIZE, 0.75f, true /* access order */) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Label> eldest) {
+                    return size() > CACHE_SIZE;
+                }
+            };
+
+    CalendarLabels(Map<String, String> dictionary, Measurer measurer) {
+        mDictionary = new HashMap<>(dictionary);
+        mMeasurer = measurer;
+    }
+
+    /**
+     * Parses dictionary entries of the form "Description=Label", as in the
+     * calendar_abbreviations resource. Entries without an '=' are ignored, and labels are cut to
+     * {@link #MAX_LABEL_LENGTH}.
+     */
+    static Map<String, String> parseDictionary(String[] entries) {
+        Map<String, String> dictionary = new HashMap<>();
+        for (String entry : entries) {
+            int separator = entry.lastIndexOf('=');
+            if (separator > 0) {
+                int end = Math.min(entry.length(), separator + 1 + MAX_LABEL_LENGTH);
+                dictionary.put(entry.substring(0, separator), entry.substring(separator + 1, end));
+            }
+        }
+        return dictionary;
+    }
+
+    synchronized Label get(String description) {
+        Label label = mCache.get(description);
+        if (label == null) {
+            String text = abbreviate(description, mDictionary);
+            label = text.length() > 0 ? new Label(text, mMeasurer.measure(text)) : Label.NONE;
+            mCache.put(description, label);
+        }
+        return label;
+    }
+
+    /** The label shown in place of a missing one. */
+    synchronized Label placeholder() {
+        if (mPlaceholder == null) {
+            mPlaceholder = new Label(PLACEHOLDER, mMeasurer.measure(PLACEHOLDER));
+        }
+        return mPlaceholder;
+    }
+
+    /**
+     * Returns the dictionary label for description, or else its leading space-separated words
+     * for as long as the words themselves fit in 4 characters (so two short words and the space
+     * between them may make 5).
+     */
+    static String abbreviate(String description, Map<String, String> dictionary) {
+        String label = dictionary.get(description);
+        if (label != null) {
+            return label;
+        }
+
+        // Trailing spaces separate nothing.
+        int length = description.length();
+        while (length > 0 && description.charAt(length - 1) == ' ') {
+            length--;
+        }
+        int labelLength = 0;
+        int end = 0;
+        int start = 0;
+        while (start <= length) {
+            int wordEnd = description.indexOf(' ', start);
+            if (wordEnd == -1 || wordEnd > length) {
+                wordEnd = length;
+            }
+            int wordLength = wordEnd - start;
+            if (labelLength + wordLength > MAX_LENGTH) {
+                break;
+            }
+            labelLength = start == 0 ? wordLength : labelLength + 1 + wordLength;
+            end = wordEnd;
+            start = wordEnd + 1;
+        }
+        return description.substring(0, end);
+    }
+}
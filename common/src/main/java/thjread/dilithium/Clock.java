@@ -0,0 +1,14 @@
+package thjread.dilithium;
+
+/** The time source of caches and schedules on both sides, replaced in tests. */
+public interface Clock {
+    Clock SYSTEM = new Clock() {
+        @Override
+        public long now() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    /** Epoch milliseconds. */
+    long now();
+}
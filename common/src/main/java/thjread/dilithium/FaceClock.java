@@ -0,0 +1,132 @@
+package thjread.dilithium;
+
+import java.util.TimeZone;
+
+/**
+ * Splits epoch milliseconds into the local date and time fields the face shows, without
+ * {@link java.util.Calendar}. The UTC offset and date are cached for the span of time in which
+ * neither changes (normally one local day, cut short by a DST transition), so most updates are
+ * a range check and a few integer divisions. The span is recomputed on day rollover, when an
+ * offset transition is reached, when the time jumps outside it, or on
+ * {@link #setTimeZone}.
+ */
+final class FaceClock {
+    private static final long SECOND = 1000;
+    private static final long MINUTE = 60 * SECOND;
+    private static final long HOUR = 60 * MINUTE;
+    private static final long DAY = 24 * HOUR;
+
+    private TimeZone mTimeZone;
+
+    /* The cached span [mSpanStart, mSpanEnd), with its UTC offset and local day number. */
+    private long mSpanStart = Long.MAX_VALUE;
+    private long mSpanEnd = Long.MIN_VALUE;
+    private int mOffset;
+    private long mLocalDay;
+
+    long millis;
+    int year;
+    /* 1 to 12. */
+    int month;
+    int dayOfMonth;
+    int hour;
+    int minute;
+    int second;
+
+    FaceClock(TimeZone timeZone) {
+        mTimeZone = timeZone;
+    }
+
+    void setTimeZone(TimeZone timeZone) {
+        mTimeZone = timeZone;
+        mSpanStart = Long.MAX_VALUE;
+        mSpanEnd = Long.MIN_VALUE;
+        setTime(millis);
+    }
+
+    void setTime(long millis) {
+        this.millis = millis;
+        if (millis < mSpanStart || millis >= mSpanEnd) {
+            computeSpan(millis);
+        }
+        long msOfDay = millis + mOffset - mLocalDay * DAY;
+        hour = (int) (msOfDay / HOUR);
+        minute = (int) (msOfDay / MINUTE % 60);
+        second = (int) (msOfDay / SECOND % 60);
+    }
+
+    private void computeSpan(long millis) {
+        int offset = mTimeZone.getOffset(millis);
+        long localDay = floorDiv(millis + offset, DAY);
+
+        // Assume the offset holds for the whole local day, then cut the span at any transition.
+        long start = localDay * DAY - offset;
+        long end = start + DAY;
+        if (mTimeZone.getOffset(start) != offset) {
+            start = firstWithOffset(mTimeZone, start, millis, offset, true);
+        }
+        if (mTimeZone.getOffset(end - 1) != offset) {
+            end = firstWithOffset(mTimeZone, millis, end - 1, offset, false);
+        }
+
+        mSpanStart = start;
+        mSpanEnd = end;
+        mOffset = offset;
+        if (localDay != mLocalDay || year == 0) {
+            mLocalDay = localDay;
+            setDate(localDay);
+        }
+    }
+
+    /**
+     * Returns the first instant of the local day after the one containing millis in timeZone:
+     * midnight, or the end of the DST gap when clocks go forward over midnight.
+     */
+    static long nextMidnight(TimeZone timeZone, long millis) {
+        long localMidnight = (floorDiv(millis + timeZone.getOffset(millis), DAY) + 1) * DAY;
+        int offset = timeZone.getOffset(localMidnight - timeZone.getOffset(millis));
+        long midnight = localMidnight - offset;
+        int before = timeZone.getOffset(midnight);
+        if (before < offset) {
+            // Local midnight doesn't exist, so the day starts at the transition.
+            midnight = firstWithOffset(timeZone, midnight, localMidnight - before, offset, true);
+        }
+        return midnight;
+    }
+
+    /**
+     * Binary search for the first instant in (low, high] at which the offset is (if matching)
+     * or stops being (if not matching) the given one. Offsets are assumed to change at most once
+     * in the range.
+     */
+    private static long firstWithOffset(TimeZone timeZone, long low, long high, int offset,
+                                        boolean matching) {
+        while (high - low > 1) {
+            long mid = low + (high - low) / 2;
+            if ((timeZone.getOffset(mid) == offset) == matching) {
+                high = mid;
+            } else {
+                low = mid;
+            }
+        }
+        return high;
+    }
+
+    /* Civil date from days since 1970-01-01, proleptic Gregorian. */
+    private void setDate(long days) {
+        long z = days + 719468;
+        long era = (z >= 0 ? z : z - 146096) / 146097;
+        long dayOfEra = z - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        dayOfMonth = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+    }
+
+    private static long floorDiv(long x, long y) {
+        long q = x / y;
+        return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+    }
+}
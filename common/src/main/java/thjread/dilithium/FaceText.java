@@ -0,0 +1,89 @@
+package thjread.dilithium;
+
+/**
+ * Fixed-capacity character buffer for text that is redrawn every frame. Numbers are written in
+ * place digit by digit, so refreshing the time, date or battery text never allocates. Draw it
+ * with {@code Canvas.drawText(chars, 0, length, x, y, paint)}.
+ */
+final class FaceText {
+    final char[] chars;
+    int length;
+
+    FaceText(int capacity) {
+        chars = new char[capacity];
+    }
+
+    FaceText clear() {
+        length = 0;
+        return this;
+    }
+
+    FaceText append(char c) {
+        chars[length++] = c;
+        return this;
+    }
+
+    FaceText append(String s) {
+        s.getChars(0, s.length(), chars, length);
+        length += s.length();
+        return this;
+    }
+
+    /**
+     * Appends value padded with leading zeros to at least width characters, matching
+     * {@code String.format("%0<width>d", value)} (the sign counts towards the width).
+     */
+    FaceText appendPadded(int value, int width) {
+        long v = value;
+        if (v < 0) {
+            append('-');
+            v = -v;
+            width--;
+        }
+        int digits = 1;
+        for (long p = 10; p <= v; p *= 10) {
+            digits++;
+        }
+        for (int i = digits; i < width; ++i) {
+            append('0');
+        }
+        int end = length + digits;
+        for (int i = end - 1; i >= length; --i) {
+            chars[i] = (char) ('0' + v % 10);
+            v /= 10;
+        }
+        length = end;
+        return this;
+    }
+
+    /** "HH:MM:SS", or "HH:MM" when seconds are hidden. */
+    FaceText setTime(int hour, int minute, int second, boolean showSeconds) {
+        clear().appendPadded(hour, 2).append(':').appendPadded(minute, 2);
+        if (showSeconds) {
+            append(':').appendPadded(second, 2);
+        }
+        return this;
+    }
+
+    /** "YYYYMM.DD", with month counted from 1. */
+    FaceText setDate(int year, int month, int day) {
+        return clear().appendPadded(year, 4).appendPadded(month, 2).append('.').appendPadded(day, 2);
+    }
+
+    boolean contentEquals(String s) {
+        if (s.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (s.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return new String(chars, 0, length);
+    }
+}
@@ -0,0 +1,30 @@
+package thjread.dilithium;
+
+/**
+ * The parts of a forecast.io response that the phone uses, as decoded by
+ * {@link ForecastDecoder}. Values the response leaves out are NaN, or 0 for times. Times are
+ * epoch seconds, as in the response, except for fetchedAt.
+ */
+final class Forecast {
+    /* When the response came from the API, epoch milliseconds, as set by WeatherClient. */
+    long fetchedAt;
+
+    /* Current conditions. */
+    float temperature = Float.NaN;
+    float precipProbability = Float.NaN;
+    float precipIntensity = Float.NaN;
+
+    /* Today's, from the first daily point. */
+    long sunriseTime;
+    long sunsetTime;
+
+    /* The hourly series, in parallel arrays of which the first hourCount entries are used. */
+    int hourCount;
+    long[] hourlyTime = new long[0];
+    float[] hourlyTemperature = new float[0];
+    float[] hourlyPrecipProbability = new float[0];
+
+    boolean hasTemperature() {
+        return !Float.isNaN(temperature);
+    }
+}
@@ -0,0 +1,171 @@
+package thjread.dilithium;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Decodes a forecast.io response into a {@link Forecast} in one streaming pass, reading only the
+ * fields the phone uses and skipping the rest (the minutely series, summaries, flags and every
+ * other field of a data point) without binding them to objects.
+ */
+final class ForecastDecoder {
+    /* forecast.io returns 49 hours. */
+    private static final int INITIAL_HOURS = 49;
+
+    private ForecastDecoder() {
+    }
+
+    static Forecast decode(Reader reader) throws IOException {
+        JsonReader in = new JsonReader(reader);
+        Forecast forecast = new Forecast();
+        in.beginObject();
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "currently":
+                    if (beginObject(in)) {
+                        readCurrently(in, forecast);
+                    }
+                    break;
+                case "hourly":
+                    if (beginObject(in)) {
+                        readBlock(in, forecast, true);
+                    }
+                    break;
+                case "daily":
+                    if (beginObject(in)) {
+                        readBlock(in, forecast, false);
+                    }
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        return forecast;
+    }
+
+    private static void readCurrently(JsonReader in, Forecast forecast) throws IOException {
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "temperature":
+                    forecast.temperature = nextFloat(in);
+                    break;
+                case "precipProbability":
+                    forecast.precipProbability = nextFloat(in);
+                    break;
+                case "precipIntensity":
+                    forecast.precipIntensity = nextFloat(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    /* Reads the data array of the hourly block into the series, or of the daily one for today. */
+    private static void readBlock(JsonReader in, Forecast forecast, boolean hourly)
+            throws IOException {
+        while (in.hasNext()) {
+            if (!in.nextName().equals("data") || in.peek() != JsonToken.BEGIN_ARRAY) {
+                in.skipValue();
+                continue;
+            }
+            in.beginArray();
+            if (hourly) {
+                while (in.hasNext()) {
+                    if (beginObject(in)) {
+                        readHour(in, forecast);
+                    }
+                }
+            } else if (in.hasNext() && beginObject(in)) {
+                readToday(in, forecast);
+            }
+            while (in.hasNext()) {
+                in.skipValue();
+            }
+            in.endArray();
+        }
+        in.endObject();
+    }
+
+    private static void readHour(JsonReader in, Forecast forecast) throws IOException {
+        int i = forecast.hourCount;
+        if (i == forecast.hourlyTime.length) {
+            int length = Math.max(INITIAL_HOURS, i * 2);
+            forecast.hourlyTime = Arrays.copyOf(forecast.hourlyTime, length);
+            forecast.hourlyTemperature = Arrays.copyOf(forecast.hourlyTemperature, length);
+            forecast.hourlyPrecipProbability =
+                    Arrays.copyOf(forecast.hourlyPrecipProbability, length);
+        }
+        long time = 0;
+        float temperature = Float.NaN;
+        float precipProbability = Float.NaN;
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "time":
+                    time = nextTime(in);
+                    break;
+                case "temperature":
+                    temperature = nextFloat(in);
+                    break;
+                case "precipProbability":
+                    precipProbability = nextFloat(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+        forecast.hourlyTime[i] = time;
+        forecast.hourlyTemperature[i] = temperature;
+        forecast.hourlyPrecipProbability[i] = precipProbability;
+        forecast.hourCount = i + 1;
+    }
+
+    private static void readToday(JsonReader in, Forecast forecast) throws IOException {
+        while (in.hasNext()) {
+            switch (in.nextName()) {
+                case "sunriseTime":
+                    forecast.sunriseTime = nextTime(in);
+                    break;
+                case "sunsetTime":
+                    forecast.sunsetTime = nextTime(in);
+                    break;
+                default:
+                    in.skipValue();
+            }
+        }
+        in.endObject();
+    }
+
+    /* Begins an object, or skips a null or anything else in its place and returns false. */
+    private static boolean beginObject(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.BEGIN_OBJECT) {
+            in.skipValue();
+            return false;
+        }
+        in.beginObject();
+        return true;
+    }
+
+    private static float nextFloat(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.NUMBER) {
+            in.skipValue();
+            return Float.NaN;
+        }
+        return (float) in.nextDouble();
+    }
+
+    private static long nextTime(JsonReader in) throws IOException {
+        if (in.peek() != JsonToken.NUMBER) {
+            in.skipValue();
+            return 0;
+        }
+        return in.nextLong();
+    }
+}
@@ -0,0 +1,223 @@
+package thjread.dilithium;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * The /weather_data message the phone sends to the watch: current conditions, sunrise and
+ * sunset, and an hourly temperature and precipitation series for the next 12 hours, so that one
+ * message keeps the face supplied for hours.
+ *
+ * <p>Format (big-endian), version 1:
+ * <pre>
+ *   byte   version
+ *   int    fetch time, epoch seconds (unsigned, as are the other times)
+ *   short  temperature, tenths of a degree Celsius
+ *   byte   precipitation probability, percent
+ *   short  precipitation intensity, hundredths of a mm/h (unsigned)
+ *   int    sunrise, epoch seconds (0 if unknown)
+ *   int    sunset, epoch seconds (0 if unknown)
+ *   byte   hour count n (at most 12)
+ *   int    start of the first hour, epoch seconds (only if n &gt; 0)
+ *   n      varints: hourly temperature in tenths of a degree, the first absolute and the
+ *          rest as the difference from the hour before
+ *   n      varints: hourly precipitation probability in percent, encoded the same way
+ * </pre>
+ * Varints are zigzag-encoded base-128, so small differences take one byte and a typical message
+ * is under 50 bytes. Encoding and decoding work directly on a ByteBuffer wrapped around the
+ * message bytes. Decoding ignores anything after the message, which lets the phone re-send the
+ * same forecast as a DataItem that still changes.
+ */
+public final class WeatherPayload {
+    public static final int VERSION = 1;
+    public static final int MAX_HOURS = 12;
+
+    private static final long SECOND = 1000;
+    private static final long HOUR = 3600 * SECOND;
+    /* The phone pushes a new forecast before less than this much of the hourly series is left. */
+    public static final long MIN_COVERAGE = 6 * HOUR;
+
+    /* Epoch milliseconds, but only carried to the second. */
+    public long fetchTime;
+    /* Degrees Celsius, carried to a tenth. */
+    public float temperature;
+    public int precipProbability;
+    /* mm/h, carried to a hundredth. */
+    public float precipIntensity;
+    /* Epoch milliseconds, 0 if unknown. */
+    public long sunrise;
+    public long sunset;
+
+    /* Hourly series starting at hourlyStart (epoch milliseconds). */
+    public long hourlyStart;
+    public int hourCount;
+    public final float[] hourlyTemperature = new float[MAX_HOURS];
+    public final int[] hourlyPrecipProbability = new int[MAX_HOURS];
+
+    /** Returns the encoded size in bytes. */
+    public int encodedSize() {
+        int count = Math.min(hourCount, MAX_HOURS);
+        int size = 1 + 4 + 2 + 1 + 2 + 4 + 4 + 1;
+        if (count > 0) {
+            size += 4;
+            int previousTemperature = 0, previousProbability = 0;
+            for (int i = 0; i < count; ++i) {
+                int t = tenths(hourlyTemperature[i]);
+                size += varintSize(zigzag(t - previousTemperature));
+                previousTemperature = t;
+                int p = clamp(hourlyPrecipProbability[i], 0, 100);
+                size += varintSize(zigzag(p - previousProbability));
+                previousProbability = p;
+            }
+        }
+        return size;
+    }
+
+    /** Encodes into a new array of exactly {@link #encodedSize()} bytes. */
+    public byte[] encode() {
+        byte[] data = new byte[encodedSize()];
+        encode(ByteBuffer.wrap(data));
+        return data;
+    }
+
+    /** Writes the message at the buffer's position, which must have encodedSize() remaining. */
+    public void encode(ByteBuffer out) {
+        int count = Math.min(hourCount, MAX_HOURS);
+        out.put((byte) VERSION);
+        out.putInt(seconds(fetchTime));
+        out.putShort((short) tenths(temperature));
+        out.put((byte) clamp(precipProbability, 0, 100));
+        out.putShort((short) clamp(Math.round(precipIntensity * 100), 0, 0xffff));
+        out.putInt(seconds(sunrise));
+        out.putInt(seconds(sunset));
+        out.put((byte) count);
+        if (count == 0) {
+            return;
+        }
+        out.putInt(seconds(hourlyStart));
+        int previous = 0;
+        for (int i = 0; i < count; ++i) {
+            int t = tenths(hourlyTemperature[i]);
+            putVarint(out, zigzag(t - previous));
+            previous = t;
+        }
+        previous = 0;
+        for (int i = 0; i < count; ++i) {
+            int p = clamp(hourlyPrecipProbability[i], 0, 100);
+            putVarint(out, zigzag(p - previous));
+            previous = p;
+        }
+    }
+
+    /**
+     * Reads a message from the buffer into this object. Returns false, leaving the fields in an
+     * unspecified state, if the message is of an unknown version or truncated.
+     */
+    public boolean decode(ByteBuffer in) {
+        try {
+            if (in.get() != VERSION) {
+                return false;
+            }
+            fetchTime = (in.getInt() & 0xffffffffL) * SECOND;
+            temperature = in.getShort() / 10f;
+            precipProbability = in.get();
+            precipIntensity = (in.getShort() & 0xffff) / 100f;
+            sunrise = (in.getInt() & 0xffffffffL) * SECOND;
+            sunset = (in.getInt() & 0xffffffffL) * SECOND;
+            hourCount = in.get();
+            if (hourCount < 0 || hourCount > MAX_HOURS) {
+                return false;
+            }
+            if (hourCount == 0) {
+                hourlyStart = 0;
+                return true;
+            }
+            hourlyStart = (in.getInt() & 0xffffffffL) * SECOND;
+            int value = 0;
+            for (int i = 0; i < hourCount; ++i) {
+                value += unzigzag(getVarint(in));
+                hourlyTemperature[i] = value / 10f;
+            }
+            value = 0;
+            for (int i = 0; i < hourCount; ++i) {
+                value += unzigzag(getVarint(in));
+                hourlyPrecipProbability[i] = value;
+            }
+            return true;
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The temperature to show at the given time: the current temperature for the first hour
+     * after the fetch, then the hourly series interpolated, and the last known value beyond it.
+     */
+    public float temperatureAt(long time) {
+        if (hourCount == 0 || time < fetchTime + HOUR || time < hourlyStart) {
+            return temperature;
+        }
+        long offset = time - hourlyStart;
+        int hour = (int) (offset / HOUR);
+        if (hour >= hourCount - 1) {
+            return hourlyTemperature[hourCount - 1];
+        }
+        float fraction = (offset - hour * HOUR) / (float) HOUR;
+        return hourlyTemperature[hour]
+                + (hourlyTemperature[hour + 1] - hourlyTemperature[hour]) * fraction;
+    }
+
+    /** The end of the hourly series, or the fetch time if there is none. */
+    public long coveredUntil() {
+        return hourCount > 0 ? hourlyStart + hourCount * HOUR : fetchTime;
+    }
+
+    private static int tenths(float value) {
+        return clamp(Math.round(value * 10), Short.MIN_VALUE, Short.MAX_VALUE);
+    }
+
+    private static int seconds(long millis) {
+        return (int) (millis / SECOND);
+    }
+
+    private static int clamp(int value, int min, int max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static int varintSize(int value) {
+        int size = 1;
+        while ((value & ~0x7f) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    private static void putVarint(ByteBuffer out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.put((byte) ((value & 0x7f) | 0x80));
+            value >>>= 7;
+        }
+        out.put((byte) value);
+    }
+
+    private static int getVarint(ByteBuffer in) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7f) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new BufferUnderflowException();
+    }
+}
@@ -0,0 +1,56 @@
+package thjread.dilithium;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the {@link WeatherPayload} sent to the watch from a decoded forecast.
+ */
+final class WeatherPayloadBuilder {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private WeatherPayloadBuilder() {
+    }
+
+    /**
+     * Returns the payload for the forecast as of now, stamped with the time the forecast was
+     * fetched, or null if it has no current temperature.
+     */
+    static WeatherPayload build(Forecast forecast, long now) {
+        if (forecast == null || !forecast.hasTemperature()) {
+            return null;
+        }
+        WeatherPayload payload = new WeatherPayload();
+        payload.fetchTime = forecast.fetchedAt;
+        payload.temperature = forecast.temperature;
+        payload.precipProbability = percent(forecast.precipProbability);
+        payload.precipIntensity = Float.isNaN(forecast.precipIntensity)
+                ? 0 : forecast.precipIntensity;
+        payload.sunrise = TimeUnit.SECONDS.toMillis(forecast.sunriseTime);
+        payload.sunset = TimeUnit.SECONDS.toMillis(forecast.sunsetTime);
+
+        // Start at the hour now falls in, and stop at the first gap.
+        int first = 0;
+        while (first < forecast.hourCount
+                && TimeUnit.SECONDS.toMillis(forecast.hourlyTime[first]) + HOUR <= now) {
+            first++;
+        }
+        int count = 0;
+        for (int i = first; i < forecast.hourCount && count < WeatherPayload.MAX_HOURS; ++i) {
+            if (forecast.hourlyTime[i] == 0 || Float.isNaN(forecast.hourlyTemperature[i])) {
+                break;
+            }
+            if (count == 0) {
+                payload.hourlyStart = TimeUnit.SECONDS.toMillis(forecast.hourlyTime[i]);
+            }
+            payload.hourlyTemperature[count] = forecast.hourlyTemperature[i];
+            payload.hourlyPrecipProbability[count] = percent(forecast.hourlyPrecipProbability[i]);
+            count++;
+        }
+        payload.hourCount = count;
+        return payload;
+    }
+
+    private static int percent(float probability) {
+        return Float.isNaN(probability) ? 0 : Math.round(probability * 100);
+    }
+}
@@ -0,0 +1,88 @@
+package thjread.dilithium;
+
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class CalendarLabelsTest {
+    private static final Map<String, String> NO_DICTIONARY = Collections.emptyMap();
+
+    /* Counts calls, and makes every character 10 units wide. */
+    private static class CountingMeasurer implements CalendarLabels.Measurer {
+        int calls;
+
+        @Override
+        public float measure(String text) {
+            calls++;
+            return text.length() * 10;
+        }
+    }
+
+    @Test
+    public void keepsLeadingWordsThatFit() {
+        assertEquals("Lab", CalendarLabels.abbreviate("Lab", NO_DICTIONARY));
+        assertEquals("Gym", CalendarLabels.abbreviate("Gym session", NO_DICTIONARY));
+        assertEquals("Go to", CalendarLabels.abbreviate("Go to town", NO_DICTIONARY));
+        assertEquals("CS IA", CalendarLabels.abbreviate("CS IA Group Project", NO_DICTIONARY));
+        assertEquals("", CalendarLabels.abbreviate("Supervision", NO_DICTIONARY));
+        assertEquals("Lab", CalendarLabels.abbreviate("Lab  ", NO_DICTIONARY));
+        assertEquals("", CalendarLabels.abbreviate("", NO_DICTIONARY));
+    }
+
+    @Test
+    public void dictionaryOverridesShortening() {
+        Map<String, String> dictionary = CalendarLabels.parseDictionary(
+                new String[] { "Study Room=Free", "Sports Hall=Sprt", "not an entry" });
+        assertEquals(2, dictionary.size());
+        assertEquals("Free", CalendarLabels.abbreviate("Study Room", dictionary));
+        assertEquals("Sprt", CalendarLabels.abbreviate("Sports Hall", dictionary));
+        assertEquals("Lab", CalendarLabels.abbreviate("Lab", dictionary));
+    }
+
+    @Test
+    public void longDictionaryLabelsAreCutToFit() {
+        Map<String, String> dictionary = CalendarLabels.parseDictionary(
+                new String[] { "Seminar=Departmental seminar series" });
+        String label = CalendarLabels.abbreviate("Seminar", dictionary);
+        assertEquals(CalendarLabels.MAX_LABEL_LENGTH, label.length());
+        assertEquals("Departmental sem", label);
+        // Drawing it into the face's buffer doesn't overflow.
+        new FaceText(CalendarLabels.MAX_LABEL_LENGTH).append(label);
+    }
+
+    @Test
+    public void recurringDescriptionsAreMeasuredOnce() {
+        CountingMeasurer measurer = new CountingMeasurer();
+        CalendarLabels labels = new CalendarLabels(NO_DICTIONARY, measurer);
+
+        CalendarLabels.Label label = labels.get("Gym session");
+        assertEquals("Gym", label.text);
+        assertEquals(30, label.width, 0);
+        assertSame(label, labels.get("Gym session"));
+        assertEquals(1, measurer.calls);
+
+        // Nothing to measure for descriptions that shorten to nothing.
+        assertSame(CalendarLabels.Label.NONE, labels.get("Supervision"));
+        assertEquals(1, measurer.calls);
+    }
+
+    @Test
+    public void leastRecentlyUsedLabelsAreEvicted() {
+        CountingMeasurer measurer = new CountingMeasurer();
+        CalendarLabels labels = new CalendarLabels(NO_DICTIONARY, measurer);
+
+        CalendarLabels.Label first = labels.get("A 0");
+        for (int i = 1; i < 100; ++i) {
+            labels.get("A " + i);
+            // Keep the first one in use.
+            assertSame(first, labels.get("A 0"));
+        }
+        assertEquals(100, measurer.calls);
+        labels.get("A 1");
+        assertEquals(101, measurer.calls);
+    }
+}
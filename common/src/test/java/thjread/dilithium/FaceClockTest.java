@@ -0,0 +1,160 @@
+package thjread.dilithium;
+
+import org.junit.Test;
+
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.*;
+
+public class FaceClockTest {
+    private static final long SECOND = 1000;
+    private static final long HOUR = 3600 * SECOND;
+    private static final long DAY = 24 * HOUR;
+
+    private static void assertMatchesCalendar(FaceClock clock, TimeZone zone, long millis) {
+        clock.setTime(millis);
+        Calendar calendar = new GregorianCalendar(zone);
+        calendar.setTimeInMillis(millis);
+        String at = zone.getID() + " @ " + millis;
+        assertEquals(at, calendar.get(Calendar.YEAR), clock.year);
+        assertEquals(at, calendar.get(Calendar.MONTH) + 1, clock.month);
+        assertEquals(at, calendar.get(Calendar.DAY_OF_MONTH), clock.dayOfMonth);
+        assertEquals(at, calendar.get(Calendar.HOUR_OF_DAY), clock.hour);
+        assertEquals(at, calendar.get(Calendar.MINUTE), clock.minute);
+        assertEquals(at, calendar.get(Calendar.SECOND), clock.second);
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute) {
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    /** Ticks second by second across a window, as the interactive face does. */
+    private static void tick(String zoneId, long from, long to) {
+        TimeZone zone = TimeZone.getTimeZone(zoneId);
+        FaceClock clock = new FaceClock(zone);
+        for (long t = from; t < to; t += SECOND) {
+            assertMatchesCalendar(clock, zone, t);
+        }
+    }
+
+    @Test
+    public void springForward_london() throws Exception {
+        long transition = utc(2016, 3, 27, 1, 0);
+        tick("Europe/London", transition - 2 * HOUR, transition + 2 * HOUR);
+    }
+
+    @Test
+    public void fallBack_newYork() throws Exception {
+        long transition = utc(2016, 11, 6, 6, 0);
+        tick("America/New_York", transition - 3 * HOUR, transition + 3 * HOUR);
+    }
+
+    @Test
+    public void halfHourTransition_lordHowe() throws Exception {
+        long transition = utc(2016, 4, 2, 15, 0);
+        tick("Australia/Lord_Howe", transition - HOUR, transition + HOUR);
+    }
+
+    @Test
+    public void dayRollover_southernHemisphere() throws Exception {
+        long midnight = utc(2016, 12, 31, 11, 0);
+        tick("Pacific/Auckland", midnight - HOUR, midnight + HOUR);
+    }
+
+    @Test
+    public void skippedDay_apia() throws Exception {
+        // Samoa skipped 30 December 2011 when it moved across the date line.
+        long transition = utc(2011, 12, 30, 10, 0);
+        tick("Pacific/Apia", transition - 2 * HOUR, transition + 2 * HOUR);
+    }
+
+    @Test
+    public void minuteTicks_overTwoYears() throws Exception {
+        String[] zones = {"UTC", "Europe/London", "America/Sao_Paulo", "Asia/Kolkata",
+                "Asia/Kathmandu", "America/St_Johns", "Australia/Adelaide"};
+        for (String zoneId : zones) {
+            TimeZone zone = TimeZone.getTimeZone(zoneId);
+            FaceClock clock = new FaceClock(zone);
+            for (long t = utc(2015, 1, 1, 0, 0); t < utc(2017, 1, 1, 0, 0); t += 60 * SECOND) {
+                assertMatchesCalendar(clock, zone, t);
+            }
+        }
+    }
+
+    @Test
+    public void timeZoneChange_recomputesFields() throws Exception {
+        long now = utc(2016, 6, 30, 22, 30);
+        TimeZone london = TimeZone.getTimeZone("Europe/London");
+        TimeZone tokyo = TimeZone.getTimeZone("Asia/Tokyo");
+        FaceClock clock = new FaceClock(london);
+        assertMatchesCalendar(clock, london, now);
+        assertEquals(30, clock.dayOfMonth);
+
+        clock.setTimeZone(tokyo);
+        assertEquals(7, clock.month);
+        assertEquals(1, clock.dayOfMonth);
+        assertEquals(7, clock.hour);
+        assertMatchesCalendar(clock, tokyo, now + SECOND);
+    }
+
+    @Test
+    public void timeJumps_backwardsAndForwards() throws Exception {
+        TimeZone zone = TimeZone.getTimeZone("Europe/Berlin");
+        FaceClock clock = new FaceClock(zone);
+        long t = utc(2016, 10, 30, 0, 59);
+        long[] jumps = {0, 40 * DAY, -400 * DAY, 2 * HOUR, -3 * HOUR, 1, -1, 10000 * DAY};
+        for (long jump : jumps) {
+            t += jump;
+            assertMatchesCalendar(clock, zone, t);
+        }
+        assertMatchesCalendar(clock, zone, -1);
+        assertMatchesCalendar(clock, zone, -DAY * 365 * 100);
+    }
+
+    /*
+     * Midnight of the next local day from its date; a lenient Calendar moves a midnight that
+     * doesn't exist forward to the end of the gap.
+     */
+    private static long calendarNextMidnight(TimeZone zone, long millis) {
+        Calendar calendar = new GregorianCalendar(zone);
+        calendar.setTimeInMillis(millis);
+        Calendar next = new GregorianCalendar(zone);
+        next.clear();
+        next.set(calendar.get(Calendar.YEAR), calendar.get(Calendar.MONTH),
+                calendar.get(Calendar.DAY_OF_MONTH) + 1);
+        return next.getTimeInMillis();
+    }
+
+    @Test
+    public void nextMidnight_matchesCalendar() throws Exception {
+        String[] zones = {"UTC", "Europe/London", "America/Sao_Paulo", "America/New_York",
+                "Asia/Kathmandu", "Australia/Lord_Howe", "Pacific/Apia"};
+        for (String zoneId : zones) {
+            TimeZone zone = TimeZone.getTimeZone(zoneId);
+            for (long t = utc(2011, 1, 1, 0, 0); t < utc(2017, 3, 1, 0, 0); t += HOUR - SECOND) {
+                assertEquals(zoneId + " @ " + t, calendarNextMidnight(zone, t),
+                        FaceClock.nextMidnight(zone, t));
+            }
+        }
+    }
+
+    @Test
+    public void nextMidnight_acrossTransitionsAtMidnight() throws Exception {
+        TimeZone zone = TimeZone.getTimeZone("America/Sao_Paulo");
+        // Clocks went from 00:00 to 01:00 on 16 October 2016, so that day began at 03:00 UTC.
+        long gap = utc(2016, 10, 16, 3, 0);
+        assertEquals(gap, FaceClock.nextMidnight(zone, gap - HOUR));
+        assertEquals(gap, FaceClock.nextMidnight(zone, gap - 1));
+        assertEquals(gap + DAY - HOUR, FaceClock.nextMidnight(zone, gap));
+        // And back from 00:00 to 23:00 on 19 February 2017, which began after the second 23:00.
+        long repeat = utc(2017, 2, 19, 3, 0);
+        assertEquals(repeat, FaceClock.nextMidnight(zone, repeat - 2 * HOUR));
+        assertEquals(repeat, FaceClock.nextMidnight(zone, repeat - 1));
+        assertEquals(repeat + DAY, FaceClock.nextMidnight(zone, repeat));
+    }
+}
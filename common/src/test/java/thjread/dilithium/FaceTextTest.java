@@ -0,0 +1,83 @@
+package thjread.dilithium;
+
+import com.sun.management.ThreadMXBean;
+
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+public class FaceTextTest {
+    @Test
+    public void padding_matchesStringFormat() throws Exception {
+        FaceText text = new FaceText(12);
+        int[] values = {0, 7, 42, 100, -3, -12, 2016, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int value : values) {
+            for (int width = 1; width <= 4; ++width) {
+                text.clear().appendPadded(value, width);
+                assertEquals(String.format("%0" + width + "d", value), text.toString());
+            }
+        }
+    }
+
+    @Test
+    public void timeAndDate_matchFaceFormat() throws Exception {
+        FaceText text = new FaceText(10);
+        assertEquals("09:05:03", text.setTime(9, 5, 3, true).toString());
+        assertEquals("23:59", text.setTime(23, 59, 0, false).toString());
+        assertEquals("201604.08", text.setDate(2016, 4, 8).toString());
+        assertTrue(text.contentEquals("201604.08"));
+        assertFalse(text.contentEquals("201604.09"));
+    }
+
+    /**
+     * Drives the per-frame text path through a simulated day of frames and fails if the steady
+     * state allocates. Any per-frame allocation would add up to far more than the slack allowed
+     * for the measurement itself.
+     */
+    @Test
+    public void steadyStateFrame_doesNotAllocate() throws Exception {
+        // Allocation counting is an extension of the HotSpot bean.
+        Object bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof ThreadMXBean);
+        ThreadMXBean threads = (ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        FaceText time = new FaceText(8);
+        FaceText date = new FaceText(10);
+        FaceText battery = new FaceText(4);
+        FaceText temp = new FaceText(12);
+
+        // Warm up so that the measured loop runs compiled code.
+        renderFrames(time, date, battery, temp, 200000);
+
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        int checksum = renderFrames(time, date, battery, temp, 86400);
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+
+        assertTrue(checksum > 0);
+        assertTrue("Frames allocated " + allocated + " bytes", allocated < 1024);
+    }
+
+    private static int renderFrames(FaceText time, FaceText date, FaceText battery,
+                                    FaceText temp, int frames) {
+        int checksum = 0;
+        for (int i = 0; i < frames; ++i) {
+            int second = i % 60;
+            int minute = (i / 60) % 60;
+            int hour = (i / 3600) % 24;
+            time.setTime(hour, minute, second, (i & 1) == 0);
+            date.setDate(2016, 1 + i % 12, 1 + i % 28);
+            battery.clear().appendPadded(i % 101, i % 101 < 100 ? 2 : 3);
+            temp.clear().appendPadded(i % 50 - 20, 2);
+            checksum += time.length + date.length + battery.length + temp.length;
+        }
+        return checksum;
+    }
+}
@@ -0,0 +1,68 @@
+package thjread.dilithium;
+
+import org.junit.Test;
+
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ForecastDecoderTest {
+    private static Forecast decode(String json) throws Exception {
+        return ForecastDecoder.decode(new StringReader(json.replace('\'', '"')));
+    }
+
+    @Test
+    public void readsTheFieldsUsedAndSkipsTheRest() throws Exception {
+        Forecast forecast = decode("{'latitude':52.2053,'timezone':'Europe/London',"
+                + "'currently':{'time':1460128834,'summary':'Cloudy','precipIntensity':0.06,"
+                + "'precipProbability':0.3,'temperature':6.67,'windBearing':230},"
+                + "'minutely':{'summary':'Dry','data':[{'time':1460127600,'temperature':99}]},"
+                + "'hourly':{'summary':'Rain later','data':["
+                + "{'time':1460127600,'temperature':6.5,'precipProbability':0.1,'icon':'rain'},"
+                + "{'time':1460131200,'precipIntensity':0,'temperature':7.25},"
+                + "{'time':1460134800,'temperature':null,'precipProbability':0.5}]},"
+                + "'daily':{'data':[{'time':1460070000,'sunriseTime':1460091600,"
+                + "'sunsetTime':1460140200},{'time':1460156400,'sunriseTime':1}]},"
+                + "'flags':{'sources':['metno','isd'],'units':'si'}}");
+
+        assertTrue(forecast.hasTemperature());
+        assertEquals(6.67f, forecast.temperature, 0);
+        assertEquals(0.3f, forecast.precipProbability, 0);
+        assertEquals(0.06f, forecast.precipIntensity, 0);
+        assertEquals(1460091600, forecast.sunriseTime);
+        assertEquals(1460140200, forecast.sunsetTime);
+
+        assertEquals(3, forecast.hourCount);
+        assertEquals(1460131200, forecast.hourlyTime[1]);
+        assertEquals(6.5f, forecast.hourlyTemperature[0], 0);
+        assertEquals(7.25f, forecast.hourlyTemperature[1], 0);
+        assertTrue(Float.isNaN(forecast.hourlyTemperature[2]));
+        assertEquals(0.1f, forecast.hourlyPrecipProbability[0], 0);
+        assertTrue(Float.isNaN(forecast.hourlyPrecipProbability[1]));
+        assertEquals(0.5f, forecast.hourlyPrecipProbability[2], 0);
+    }
+
+    @Test
+    public void missingBlocksLeaveDefaults() throws Exception {
+        Forecast forecast = decode("{'currently':null,'hourly':{'data':[]},'daily':{}}");
+        assertFalse(forecast.hasTemperature());
+        assertEquals(0, forecast.hourCount);
+        assertEquals(0, forecast.sunriseTime);
+        assertEquals(null, WeatherPayloadBuilder.build(forecast, 0));
+    }
+
+    @Test
+    public void growsTheSeriesPastTheUsualLength() throws Exception {
+        StringBuilder json = new StringBuilder("{'hourly':{'data':[");
+        for (int i = 0; i < 100; ++i) {
+            json.append(i == 0 ? "" : ",").append("{'time':").append(i).append(",'temperature':")
+                    .append(i).append('}');
+        }
+        Forecast forecast = decode(json.append("]}}").toString());
+        assertEquals(100, forecast.hourCount);
+        assertEquals(99, forecast.hourlyTime[99]);
+        assertEquals(99f, forecast.hourlyTemperature[99], 0);
+    }
+}
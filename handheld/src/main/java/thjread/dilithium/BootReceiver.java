@@ -0,0 +1,18 @@
+package thjread.dilithium;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+
+/**
+ * Re-arms the {@link WeatherSync} refresh alarm after the phone reboots, which clears it, by
+ * starting the service for a refresh.
+ */
+public class BootReceiver extends BroadcastReceiver {
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (Intent.ACTION_BOOT_COMPLETED.equals(intent.getAction())) {
+            context.startService(WeatherSync.refreshIntent(context));
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package thjread.dilithium;
+
+/**
+ * A geohash cell: the box of locations sharing a geohash prefix. Forecasts are fetched for the
+ * centre of the cell the phone is in, so that every fix inside it, however it jitters, maps to
+ * the same request.
+ */
+final class GeoCell {
+    private static final String BASE32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    final String hash;
+    /* The centre. */
+    final double latitude;
+    final double longitude;
+    /* Half the height and width, in degrees. */
+    final double latitudeError;
+    final double longitudeError;
+
+    private GeoCell(String hash, double latitude, double longitude, double latitudeError,
+                    double longitudeError) {
+        this.hash = hash;
+        this.latitude = latitude;
+        this.longitude = longitude;
+        this.latitudeError = latitudeError;
+        this.longitudeError = longitudeError;
+    }
+
+    /** The cell of the given geohash precision (number of characters) containing a location. */
+    static GeoCell of(double latitude, double longitude, int precision) {
+        double minLatitude = -90, maxLatitude = 90;
+        double minLongitude = -180, maxLongitude = 180;
+        char[] hash = new char[precision];
+        boolean even = true;
+        for (int i = 0; i < precision; ++i) {
+            int index = 0;
+            for (int bit = 4; bit >= 0; --bit) {
+                // Bits alternate between longitude and latitude, longitude first.
+                if (even) {
+                    double mid = (minLongitude + maxLongitude) / 2;
+                    if (longitude >= mid) {
+                        index |= 1 << bit;
+                        minLongitude = mid;
+                    } else {
+                        maxLongitude = mid;
+                    }
+                } else {
+                    double mid = (minLatitude + maxLatitude) / 2;
+                    if (latitude >= mid) {
+                        index |= 1 << bit;
+                        minLatitude = mid;
+                    } else {
+                        maxLatitude = mid;
+                    }
+                }
+                even = !even;
+            }
+            hash[i] = BASE32.charAt(index);
+        }
+        return new GeoCell(new String(hash), (minLatitude + maxLatitude) / 2,
+                (minLongitude + maxLongitude) / 2, (maxLatitude - minLatitude) / 2,
+                (maxLongitude - minLongitude) / 2);
+    }
+
+    /**
+     * Returns whether a location is inside the cell grown on every side by margin, a fraction of
+     * its size. A margin keeps a phone sitting near an edge from flipping between cells.
+     */
+    boolean contains(double latitude, double longitude, double margin) {
+        return Math.abs(latitude - this.latitude) <= latitudeError * (1 + 2 * margin)
+                && Math.abs(longitude - this.longitude) <= longitudeError * (1 + 2 * margin);
+    }
+}
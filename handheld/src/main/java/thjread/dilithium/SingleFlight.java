@@ -0,0 +1,97 @@
+package thjread.dilithium;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * Coalesces requests for a value that is expensive to fetch: every request made while a fetch is
+ * in flight joins it, and all of them get its result. Requests also get the last good value
+ * straight away, so callers can answer with it while the fetch revalidates. Safe to use from any
+ * thread.
+ */
+final class SingleFlight<T> {
+    interface Fetcher<T> {
+        /** Runs on the executor. Returns null if the fetch failed. */
+        T fetch();
+    }
+
+    interface Listener<T> {
+        /**
+         * Called on the executor with the fetched value, or the last good one if the fetch failed
+         * (which may be null).
+         */
+        void onResult(T value);
+    }
+
+    private final Executor mExecutor;
+    private final Fetcher<T> mFetcher;
+
+    /* Guarded by this. Non-null while a fetch is in flight. */
+    private List<Listener<T>> mWaiting;
+    private T mLast;
+    private int mFetches;
+
+    SingleFlight(Executor executor, Fetcher<T> fetcher) {
+        mExecutor = executor;
+        mFetcher = fetcher;
+    }
+
+    /**
+     * Joins the fetch in flight, or starts one, and returns the last good value (null if there
+     * hasn't been one) to answer with in the meantime.
+     */
+    T request(Listener<T> listener) {
+        boolean start;
+        T last;
+        synchronized (this) {
+            start = mWaiting == null;
+            if (start) {
+                mWaiting = new ArrayList<>();
+                mFetches++;
+            }
+            mWaiting.add(listener);
+            last = mLast;
+        }
+        if (start) {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    T value = null;
+                    try {
+                        value = mFetcher.fetch();
+                    } finally {
+                        complete(value);
+                    }
+                }
+            });
+        }
+        return last;
+    }
+
+    private void complete(T value) {
+        List<Listener<T>> waiting;
+        synchronized (this) {
+            if (value != null) {
+                mLast = value;
+            } else {
+                value = mLast;
+            }
+            waiting = mWaiting;
+            // Requests from here on start a new fetch rather than joining this finished one.
+            mWaiting = null;
+        }
+        for (Listener<T> listener : waiting) {
+            listener.onResult(value);
+        }
+    }
+
+    synchronized T last() {
+        return mLast;
+    }
+
+    /** The number of fetches started. */
+    synchronized int fetchCount() {
+        return mFetches;
+    }
+}
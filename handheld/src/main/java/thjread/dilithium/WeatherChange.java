@@ -0,0 +1,39 @@
+package thjread.dilithium;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides whether a newly fetched forecast is worth pushing to the watch, which is only when it
+ * would show something different from the forecast it already has.
+ */
+final class WeatherChange {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long STEP = TimeUnit.MINUTES.toMillis(15);
+    /* Smaller differences only flip the rounding of a temperature near .5 back and forth. */
+    private static final float TEMPERATURE_THRESHOLD = 0.3f;
+
+    private WeatherChange() {
+    }
+
+    /**
+     * Returns whether the watch, showing pushed, would show a different temperature from fetched
+     * at some point over the next 12 hours, or whether pushed's series is about to run out.
+     */
+    static boolean isVisible(WeatherPayload pushed, WeatherPayload fetched, long now) {
+        if (pushed == null) {
+            return true;
+        }
+        if (pushed.coveredUntil() < now + WeatherPayload.MIN_COVERAGE) {
+            return true;
+        }
+        for (long time = now; time <= now + WeatherPayload.MAX_HOURS * HOUR; time += STEP) {
+            float shown = pushed.temperatureAt(time);
+            float fresh = fetched.temperatureAt(time);
+            if (Math.round(shown) != Math.round(fresh)
+                    && Math.abs(shown - fresh) >= TEMPERATURE_THRESHOLD) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
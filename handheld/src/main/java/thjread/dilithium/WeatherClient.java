@@ -0,0 +1,159 @@
+package thjread.dilithium;
+
+import com.squareup.okhttp.Cache;
+import com.squareup.okhttp.OkHttpClient;
+import com.squareup.okhttp.ResponseBody;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Type;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import retrofit.Converter;
+import retrofit.Response;
+import retrofit.Retrofit;
+
+/**
+ * Fetches forecasts over one long-lived OkHttp client, so connections and TLS sessions are
+ * reused, with an on-disk HTTP cache behind it. Locations are quantized to {@link GeoCell}s of
+ * a few kilometres and the forecast is requested for the centre of the cell. A forecast fetched
+ * for the same cell within {@link #TTL_MS} is returned without going to the network at all, so
+ * however often the watch asks, a phone that stays put costs one request per TTL. The last few
+ * cells are kept, which covers the two ends of a commute. Either way a forecast carries the time
+ * it actually came from the API, not the time it was asked for.
+ */
+final class WeatherClient {
+    static final String BASE_URL = "https://api.forecast.io/";
+    static final long TTL_MS = TimeUnit.MINUTES.toMillis(15);
+
+    private static final long DISK_CACHE_BYTES = 1024 * 1024;
+    /* About 5km by 3km at 50 degrees north: finer than the forecast itself varies. */
+    private static final int CELL_PRECISION = 5;
+    /* How far past the edge of the current cell the phone can go before it counts as moved. */
+    private static final double CELL_MARGIN = 0.1;
+    private static final int MAX_ENTRIES = 8;
+
+    /* Lets Retrofit return a Forecast from WeatherService, decoded by ForecastDecoder. */
+    private static final Converter.Factory FORECAST_CONVERTER = new Converter.Factory() {
+        @Override
+        public Converter<ResponseBody, ?> fromResponseBody(Type type, Annotation[] annotations) {
+            if (type != Forecast.class) {
+                return null;
+            }
+            return new Converter<ResponseBody, Forecast>() {
+                @Override
+                public Forecast convert(ResponseBody body) throws IOException {
+                    Reader reader = body.charStream();
+                    try {
+                        return ForecastDecoder.decode(reader);
+                    } finally {
+                        reader.close();
+                    }
+                }
+            };
+        }
+    };
+
+    private final OkHttpClient mClient;
+    private final WeatherService mService;
+    private final String mKey;
+    private final Clock mClock;
+    private final long mTtl;
+
+    private final Map<String, Forecast> mEntries =
+            new LinkedHashMap<String, Forecast>(MAX_ENTRIES, 0.75f, true /* access order */) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Forecast> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+    /* Guarded by this. The cell of the last fetch. */
+    private GeoCell mCell;
+    private int mHits;
+    private int mMisses;
+
+    /** The cache directory may be null to leave out the disk cache. */
+    WeatherClient(String baseUrl, String key, File cacheDir, Clock clock, long ttl) {
+        mClient = new OkHttpClient();
+        if (cacheDir != null) {
+            mClient.setCache(new Cache(cacheDir, DISK_CACHE_BYTES));
+        }
+        mService = new Retrofit.Builder()
+                .baseUrl(baseUrl)
+                .addConverterFactory(FORECAST_CONVERTER)
+                .client(mClient)
+                .build()
+                .create(WeatherService.class);
+        mKey = key;
+        mClock = clock;
+        mTtl = ttl;
+    }
+
+    /**
+     * Returns the forecast for the location, from memory if it was fetched recently enough, or
+     * null if the API didn't return one.
+     */
+    Forecast fetch(double latitude, double longitude) throws IOException {
+        long now = mClock.now();
+        GeoCell cell;
+        synchronized (this) {
+            if (mCell == null || !mCell.contains(latitude, longitude, CELL_MARGIN)) {
+                mCell = GeoCell.of(latitude, longitude, CELL_PRECISION);
+            }
+            cell = mCell;
+            Forecast cached = mEntries.get(cell.hash);
+            if (cached != null && now - cached.fetchedAt < mTtl) {
+                mHits++;
+                return cached;
+            }
+            mMisses++;
+        }
+
+        Response<Forecast> response =
+                mService.getWeatherData(mKey, round(cell.latitude), round(cell.longitude))
+                        .execute();
+        Forecast forecast = response.body();
+        if (!response.isSuccess() || forecast == null) {
+            return null;
+        }
+        forecast.fetchedAt = fetchedAt(response, now);
+        synchronized (this) {
+            mEntries.put(cell.hash, forecast);
+        }
+        return forecast;
+    }
+
+    /** Fetches answered from memory. */
+    synchronized int hitCount() {
+        return mHits;
+    }
+
+    /** Fetches that went to OkHttp, which may still answer them from the disk cache. */
+    synchronized int missCount() {
+        return mMisses;
+    }
+
+    /** The disk cache, or null if there isn't one. */
+    Cache diskCache() {
+        return mClient.getCache();
+    }
+
+    /*
+     * The response's Date, which a response from the disk cache keeps from when it was fetched,
+     * or now if it has none. A server clock ahead of the phone's doesn't put it in the future.
+     */
+    private static long fetchedAt(Response<?> response, long now) {
+        Date date = response.headers().getDate("Date");
+        return date != null ? Math.min(date.getTime(), now) : now;
+    }
+
+    /* Four decimal places keep the URL short; cell centres only need three. */
+    private static double round(double degrees) {
+        return Math.round(degrees * 10000) / 10000.0;
+    }
+}
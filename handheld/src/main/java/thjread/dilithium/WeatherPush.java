@@ -0,0 +1,54 @@
+package thjread.dilithium;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Decides what to put in the /weather_data DataItem. A fetched forecast is put only when it is
+ * newer than the one there and the watch would show something different (see
+ * {@link WeatherChange}). A watch's request is always answered with the newest forecast there is,
+ * and since putting the same bytes again doesn't reach the watch, a forecast that is already in
+ * the item is put again with the request time appended. {@link WeatherPayload#decode} ignores
+ * trailing bytes, so the watch reads it as before. Safe to use from any thread.
+ */
+final class WeatherPush {
+    /* Guarded by this. The forecast last put in the DataItem, or null if not known yet. */
+    private WeatherPayload mPushed;
+
+    /** The forecast already in the DataItem from an earlier run, unless one was put since. */
+    synchronized void setPushed(WeatherPayload pushed) {
+        if (mPushed == null) {
+            mPushed = pushed;
+        }
+    }
+
+    /**
+     * Returns the data to put for a fetched forecast, which may be null, or null if nothing
+     * should be put. If forced, returns data whenever there is any forecast to answer with.
+     */
+    synchronized byte[] data(WeatherPayload payload, boolean force, long now) {
+        boolean newer = payload != null
+                && (mPushed == null || payload.fetchTime > mPushed.fetchTime);
+        if (newer && (force || WeatherChange.isVisible(mPushed, payload, now))) {
+            mPushed = payload;
+            return payload.encode();
+        }
+        if (!force || mPushed == null) {
+            return null;
+        }
+        ByteBuffer data = ByteBuffer.allocate(mPushed.encodedSize() + 8);
+        mPushed.encode(data);
+        data.putLong(now);
+        return data.array();
+    }
+
+    /** The put of the data for payload failed, so it isn't in the DataItem after all. */
+    synchronized void onPutFailed(WeatherPayload payload) {
+        if (mPushed == payload) {
+            mPushed = null;
+        }
+    }
+
+    synchronized WeatherPayload pushed() {
+        return mPushed;
+    }
+}
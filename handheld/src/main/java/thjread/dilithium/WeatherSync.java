@@ -1,53 +1,86 @@
 package thjread.dilithium;
 
-import android.content.res.Resources;
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
 import android.location.Location;
+import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.MessageApi;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataItemBuffer;
 import com.google.android.gms.wearable.MessageEvent;
 import com.google.android.gms.wearable.Node;
+import com.google.android.gms.wearable.PutDataRequest;
 import com.google.android.gms.wearable.Wearable;
 import com.google.android.gms.wearable.WearableListenerService;
 import com.google.android.gms.location.LocationServices;
-import com.squareup.okhttp.OkHttpClient;
 
+import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.concurrent.TimeUnit;
-
-import retrofit.Call;
-import retrofit.GsonConverterFactory;
-import retrofit.Response;
-import retrofit.Retrofit;
 
+/**
+ * Fetches the forecast on the phone's own schedule and publishes it to the watch as the
+ * /weather_data DataItem, but only when the watch would show something different (see
+ * {@link WeatherPush}). The watch reads the item whenever it connects, so it rarely has to ask;
+ * a /weather_data message from a watch is answered through the item straight away and triggers
+ * an immediate fetch.
+ */
 public class WeatherSync extends WearableListenerService implements GoogleApiClient.ConnectionCallbacks,
         GoogleApiClient.OnConnectionFailedListener {
 
     private static final String WEATHER_CAPABILITY_NAME = "weather_data";
     private static final String WEATHER_PATH = "/weather_data";
 
+    private static final String ACTION_REFRESH = "thjread.dilithium.action.REFRESH_WEATHER";
+    /*
+     * Inexact and not a wakeup alarm, so refreshes ride along with other work instead of waking
+     * the phone. The watch interpolates the hourly series in between.
+     */
+    private static final long REFRESH_INTERVAL_MS = AlarmManager.INTERVAL_HALF_HOUR;
+
     private static final String TAG = "thjread.dilithium";
 
     private GoogleApiClient mGoogleApiClient;
 
-    private String mNodeId = null;
-
-    private boolean processingMessage = false;//TODO
+    /* Guarded by this. Set for a sync that has to wait for the connection. */
+    private boolean mSyncPending = false;
+    private boolean mForcePending = false;
+    private volatile int mLastStartId = 0;
 
-    private static String key;
+    private WeatherClient mWeatherClient;
+    /* Every refresh and watch request joins the fetch in flight, if there is one. */
+    private SingleFlight<WeatherPayload> mFetch;
 
-    float temperature = 0;
+    private final WeatherPush mPush = new WeatherPush();
+    /* Only touched by fetches, which never overlap. */
+    private boolean mPushedRead = false;
 
     @Override
     public void onCreate() {
-        key = getResources().getString(R.string.forecast_api_key);
+        mWeatherClient = new WeatherClient(WeatherClient.BASE_URL,
+                getResources().getString(R.string.forecast_api_key),
+                new File(getCacheDir(), "forecast"), Clock.SYSTEM, WeatherClient.TTL_MS);
+        mFetch = new SingleFlight<>(AsyncTask.THREAD_POOL_EXECUTOR,
+                new SingleFlight.Fetcher<WeatherPayload>() {
+                    @Override
+                    public WeatherPayload fetch() {
+                        if (!mPushedRead) {
+                            mPushedRead = true;
+                            mPush.setPushed(readPushed());
+                        }
+                        return weatherData();
+                    }
+                });
 
         mGoogleApiClient = new GoogleApiClient.Builder(this)
                 .addApi(Wearable.API)
@@ -57,15 +90,113 @@ public class WeatherSync extends WearableListenerService implements GoogleApiCli
                 .build();
 
         mGoogleApiClient.connect();
+        scheduleRefresh();
+    }
+
+    @Override
+    public void onDestroy() {
+        mGoogleApiClient.disconnect();
+        super.onDestroy();
+    }
+
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        mLastStartId = startId;
+        if (intent != null && ACTION_REFRESH.equals(intent.getAction())) {
+            sync(false);
+        }
+        return START_NOT_STICKY;
     }
 
     @Override
     public void onConnected(Bundle connectionHint) {
         Log.d(TAG, "Connected to Google Api Service");
-        Wearable.MessageApi.addListener(mGoogleApiClient, this);
+        boolean force;
+        synchronized (this) {
+            if (!mSyncPending) {
+                return;
+            }
+            mSyncPending = false;
+            force = mForcePending;
+            mForcePending = false;
+        }
+        sync(force);
+    }
+
+    /** Starts the service for a refresh, which also sets the refresh alarm if it isn't set. */
+    static Intent refreshIntent(Context context) {
+        return new Intent(context, WeatherSync.class).setAction(ACTION_REFRESH);
+    }
+
+    /*
+     * Sets the repeating refresh alarm, unless it is already set. Alarms don't survive a reboot,
+     * so BootReceiver starts the service again then.
+     */
+    private void scheduleRefresh() {
+        Intent intent = refreshIntent(this);
+        if (PendingIntent.getService(this, 0, intent, PendingIntent.FLAG_NO_CREATE) != null) {
+            return;
+        }
+        AlarmManager alarmManager = (AlarmManager) getSystemService(ALARM_SERVICE);
+        alarmManager.setInexactRepeating(AlarmManager.ELAPSED_REALTIME,
+                SystemClock.elapsedRealtime() + REFRESH_INTERVAL_MS, REFRESH_INTERVAL_MS,
+                PendingIntent.getService(this, 0, intent, 0));
+    }
 
-        WeatherSyncTask task = new WeatherSyncTask();
-        task.execute();
+    /**
+     * Fetches the forecast, or joins the fetch in flight, and pushes it if it changed visibly.
+     * Requests from watches force the push, and are answered at once with the newest forecast
+     * there is, if any.
+     */
+    private void sync(final boolean force) {
+        synchronized (this) {
+            if (!mGoogleApiClient.isConnected()) {
+                mSyncPending = true;
+                mForcePending |= force;
+                return;
+            }
+        }
+        WeatherPayload last = mFetch.request(new SingleFlight.Listener<WeatherPayload>() {
+            @Override
+            public void onResult(WeatherPayload payload) {
+                push(payload, force);
+                if (mLastStartId != 0) {
+                    // Only stops once no watch is bound and no later refresh has been started.
+                    stopSelf(mLastStartId);
+                }
+            }
+        });
+        if (force) {
+            push(last, true);
+        }
+    }
+
+    /*
+     * Puts what mPush decides in the DataItem: payload if it's newer and, unless forced, visibly
+     * different, and otherwise, if forced, the newest forecast there is. Returns without waiting
+     * for the put.
+     */
+    private synchronized void push(WeatherPayload payload, boolean force) {
+        byte[] data = mPush.data(payload, force, System.currentTimeMillis());
+        if (data == null) {
+            Log.d(TAG, "Forecast unchanged, not pushing");
+            return;
+        }
+        final WeatherPayload pushed = mPush.pushed();
+        Log.d(TAG, "Pushing temperature: " + Float.toString(pushed.temperature)
+                + ", " + pushed.hourCount + " hours, " + data.length + " bytes");
+        PutDataRequest request = PutDataRequest.create(WEATHER_PATH).setData(data).setUrgent();
+        Wearable.DataApi.putDataItem(mGoogleApiClient, request).setResultCallback(
+                new ResultCallback<DataApi.DataItemResult>() {
+                    @Override
+                    public void onResult(@NonNull DataApi.DataItemResult result) {
+                        if (!result.getStatus().isSuccess()) {
+                            Log.e(TAG, "Failed to push forecast");
+                            // Push again after the next fetch.
+                            mPush.onPutFailed(pushed);
+                        }
+                    }
+                });
     }
 
     @Override
@@ -79,12 +210,10 @@ public class WeatherSync extends WearableListenerService implements GoogleApiCli
 
     @Override
     public void onMessageReceived(MessageEvent messageEvent) {
-        if (messageEvent.getPath().equals(WEATHER_PATH) && !processingMessage) {//TODO
-            Log.d(TAG, "Weather message received");
-            mNodeId = messageEvent.getSourceNodeId();
-            WeatherSyncTask task = new WeatherSyncTask();
-            processingMessage = true;
-            task.execute();
+        if (messageEvent.getPath().equals(WEATHER_PATH)) {
+            // The watch has heard nothing for longer than it should have; answer at once.
+            Log.d(TAG, "Weather request received from " + messageEvent.getSourceNodeId());
+            sync(true);
         }
     }
 
@@ -98,59 +227,42 @@ public class WeatherSync extends WearableListenerService implements GoogleApiCli
         Log.d(TAG, "Peer disconnected: " + peer.getDisplayName());
     }
 
-    private class WeatherSyncTask extends AsyncTask<Void, Void, Void> {
-        @Override
-        protected Void doInBackground(Void... params) {
-            if (mGoogleApiClient.isConnected()) {
-                byte[] data = ByteBuffer.allocate(4).putFloat(weatherData()).array();
-                Log.d(TAG, "Current temperature: " + Float.toString(temperature));
-                Wearable.MessageApi.sendMessage(mGoogleApiClient, mNodeId,
-                        WEATHER_PATH, data).setResultCallback(
-                        new ResultCallback<MessageApi.SendMessageResult>() {
-                            @Override
-                            public void onResult(@NonNull MessageApi.SendMessageResult result) {
-                                processingMessage = false;//TODO
-                            }
-                        }
-                );
+    /* Returns the forecast in the DataItem from an earlier run, or null if there isn't one. */
+    private WeatherPayload readPushed() {
+        Uri uri = new Uri.Builder().scheme(PutDataRequest.WEAR_URI_SCHEME).path(WEATHER_PATH)
+                .build();
+        DataItemBuffer items = Wearable.DataApi.getDataItems(mGoogleApiClient, uri).await();
+        try {
+            for (int i = 0; i < items.getCount(); ++i) {
+                WeatherPayload payload = new WeatherPayload();
+                if (payload.decode(ByteBuffer.wrap(items.get(i).getData()))) {
+                    return payload;
+                }
             }
             return null;
+        } finally {
+            items.release();
         }
     }
 
     private Location mLastLocation = null;
 
-    private float weatherData() {
-        OkHttpClient client = new OkHttpClient();
-
-        Retrofit retrofit = new Retrofit.Builder()
-                .baseUrl("https://api.forecast.io/")
-                .addConverterFactory(GsonConverterFactory.create())
-                .client(client)
-                .build();
-
-        WeatherService service = retrofit.create(WeatherService.class);
-
+    private WeatherPayload weatherData() {
         Location l = LocationServices.FusedLocationApi.getLastLocation(mGoogleApiClient);
         if (l != null) {
             mLastLocation = l;
         }
         if (mLastLocation == null) {
-            return temperature;
+            return null;
         }
 
-        Call call = service.getWeatherData(key, mLastLocation.getLatitude(), mLastLocation.getLongitude());//TODO
         try {
-            Response<WeatherService.WeatherData> r = call.execute();
-            WeatherService.WeatherData data = r.body();
-            if (data != null && data.currently != null && data.currently.temperature != null) {
-                double temp = data.currently.temperature;
-                temperature = (float) temp;
-            }
+            Forecast forecast = mWeatherClient.fetch(mLastLocation.getLatitude(),
+                    mLastLocation.getLongitude());
+            return WeatherPayloadBuilder.build(forecast, System.currentTimeMillis());
         } catch (IOException e) {
             Log.e(TAG, e.getMessage());
+            return null;
         }
-
-        return temperature;
     }
 }
\ No newline at end of file
@@ -0,0 +1,38 @@
+package thjread.dilithium;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class GeoCellTest {
+    @Test
+    public void matchesKnownGeohashes() {
+        assertEquals("u4pruydqqvj", GeoCell.of(57.64911, 10.40744, 11).hash);
+        assertEquals("gcpvj", GeoCell.of(51.5074, -0.1278, 5).hash);
+        assertEquals("u120f", GeoCell.of(52.2053, 0.1218, 5).hash);
+    }
+
+    @Test
+    public void describesItsBox() {
+        GeoCell cell = GeoCell.of(52.2053, 0.1218, 5);
+        assertEquals(52.18505859375, cell.latitude, 0);
+        assertEquals(0.10986328125, cell.longitude, 0);
+        assertEquals(0.02197265625, cell.latitudeError, 0);
+        assertEquals(0.02197265625, cell.longitudeError, 0);
+        // The centre is in the same cell.
+        assertEquals(cell.hash, GeoCell.of(cell.latitude, cell.longitude, 5).hash);
+    }
+
+    @Test
+    public void marginToleratesJitterAcrossTheEdge() {
+        GeoCell cell = GeoCell.of(52.2053, 0.1218, 5);
+        // Just over the northern edge, in u1214.
+        assertEquals("u1214", GeoCell.of(52.2071, 0.1189, 5).hash);
+        assertFalse(cell.contains(52.2071, 0.1189, 0));
+        assertTrue(cell.contains(52.2071, 0.1189, 0.1));
+        // Well into the next cell is a move.
+        assertFalse(cell.contains(52.2200, 0.1189, 0.1));
+    }
+}
@@ -0,0 +1,187 @@
+package thjread.dilithium;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SingleFlightTest {
+    private static final int SENDERS = 16;
+
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    /* Counts its fetches, and holds each one until released. */
+    private static class GatedFetcher implements SingleFlight.Fetcher<String> {
+        final AtomicInteger fetches = new AtomicInteger();
+        volatile CountDownLatch started = new CountDownLatch(1);
+        volatile CountDownLatch release = new CountDownLatch(1);
+        volatile boolean fail;
+
+        @Override
+        public String fetch() {
+            int n = fetches.incrementAndGet();
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            return fail ? null : "forecast " + n;
+        }
+    }
+
+    /* Records the value it's called with. */
+    private static class Result implements SingleFlight.Listener<String> {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile String value;
+
+        @Override
+        public void onResult(String value) {
+            this.value = value;
+            done.countDown();
+        }
+
+        String await() throws InterruptedException {
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            return value;
+        }
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test
+    public void concurrentRequestsShareOneFetch() throws Exception {
+        GatedFetcher fetcher = new GatedFetcher();
+        final SingleFlight<String> flight = new SingleFlight<>(mExecutor, fetcher);
+        final CountDownLatch go = new CountDownLatch(1);
+        final CountDownLatch requested = new CountDownLatch(SENDERS);
+        final AtomicReferenceArray<Result> results = new AtomicReferenceArray<>(SENDERS);
+
+        // Simulated watches, all asking at once.
+        List<Thread> senders = new ArrayList<>();
+        for (int i = 0; i < SENDERS; ++i) {
+            final int sender = i;
+            Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        go.await();
+                        Result result = new Result();
+                        results.set(sender, result);
+                        assertNull(flight.request(result));
+                        requested.countDown();
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            senders.add(thread);
+            thread.start();
+        }
+        go.countDown();
+        assertTrue(requested.await(5, TimeUnit.SECONDS));
+        fetcher.release.countDown();
+
+        for (int i = 0; i < SENDERS; ++i) {
+            assertEquals("forecast 1", results.get(i).await());
+        }
+        for (Thread thread : senders) {
+            thread.join();
+        }
+        assertEquals(1, fetcher.fetches.get());
+        assertEquals(1, flight.fetchCount());
+    }
+
+    @Test
+    public void requestsAfterAFetchCompletesStartAnother() throws Exception {
+        GatedFetcher fetcher = new GatedFetcher();
+        fetcher.release.countDown();
+        SingleFlight<String> flight = new SingleFlight<>(mExecutor, fetcher);
+
+        Result first = new Result();
+        assertNull(flight.request(first));
+        assertEquals("forecast 1", first.await());
+
+        // The last good value answers straight away while the next fetch runs.
+        Result second = new Result();
+        assertEquals("forecast 1", flight.request(second));
+        assertEquals("forecast 2", second.await());
+        assertEquals(2, flight.fetchCount());
+    }
+
+    @Test
+    public void failedFetchesFallBackToTheLastGoodValue() throws Exception {
+        GatedFetcher fetcher = new GatedFetcher();
+        fetcher.release.countDown();
+        SingleFlight<String> flight = new SingleFlight<>(mExecutor, fetcher);
+
+        Result first = new Result();
+        flight.request(first);
+        assertEquals("forecast 1", first.await());
+
+        fetcher.fail = true;
+        Result second = new Result();
+        flight.request(second);
+        assertEquals("forecast 1", second.await());
+        assertEquals("forecast 1", flight.last());
+    }
+
+    @Test
+    public void requestsDuringAFetchStillGetItsResult() throws Exception {
+        GatedFetcher fetcher = new GatedFetcher();
+        SingleFlight<String> flight = new SingleFlight<>(mExecutor, fetcher);
+
+        Result early = new Result();
+        flight.request(early);
+        assertTrue(fetcher.started.await(5, TimeUnit.SECONDS));
+        // Joins even though the fetch is already under way.
+        Result late = new Result();
+        flight.request(late);
+        fetcher.release.countDown();
+
+        assertEquals("forecast 1", early.await());
+        assertEquals("forecast 1", late.await());
+        assertEquals(1, fetcher.fetches.get());
+    }
+
+    @Test
+    public void aThrowingFetchDoesNotStrandWaiters() throws Exception {
+        SingleFlight<String> flight = new SingleFlight<>(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                try {
+                    command.run();
+                } catch (IllegalStateException expected) {
+                    // The executor's thread would die here.
+                }
+            }
+        }, new SingleFlight.Fetcher<String>() {
+            @Override
+            public String fetch() {
+                throw new IllegalStateException();
+            }
+        });
+
+        Result result = new Result();
+        flight.request(result);
+        assertNull(result.await());
+        // The next request starts a new fetch rather than waiting on the failed one.
+        flight.request(new Result());
+        assertEquals(2, flight.fetchCount());
+    }
+}
@@ -0,0 +1,177 @@
+package thjread.dilithium;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class WeatherClientTest {
+    private static final String FORECAST =
+            "{\"currently\":{\"time\":1460127600,\"temperature\":8.3}}";
+    private static final long NETWORK_DELAY_MS = 200;
+
+    @Rule
+    public final TemporaryFolder mCacheDir = new TemporaryFolder();
+
+    private final MockWebServer mServer = new MockWebServer();
+    private final FakeClock mClock = new FakeClock();
+
+    private static class FakeClock implements Clock {
+        long time = 1460127600000L;
+
+        @Override
+        public long now() {
+            return time;
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        mServer.shutdown();
+    }
+
+    private WeatherClient client(boolean diskCache) {
+        return new WeatherClient(mServer.url("/").toString(), "key",
+                diskCache ? mCacheDir.getRoot() : null, mClock, WeatherClient.TTL_MS);
+    }
+
+    private static MockResponse forecast() {
+        return new MockResponse().setBody(FORECAST)
+                .setBodyDelay(NETWORK_DELAY_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @Test
+    public void repeatedFetchesWithinTheTtlStayLocal() throws Exception {
+        WeatherClient client = client(false);
+        mServer.enqueue(forecast());
+
+        long start = System.nanoTime();
+        Forecast first = client.fetch(52.2053, 0.1218);
+        long missMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertEquals(8.3f, first.temperature, 0);
+        // The centre of geohash cell u120f.
+        assertEquals("/forecast/key/52.1851,0.1099?units=si", mServer.takeRequest().getPath());
+
+        // A few hundred metres away, over the edge into u1214, a few minutes later.
+        mClock.time += TimeUnit.MINUTES.toMillis(5);
+        start = System.nanoTime();
+        assertSame(first, client.fetch(52.2071, 0.1189));
+        long hitMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(1, client.hitCount());
+        assertEquals(1, client.missCount());
+        assertEquals(1, mServer.getRequestCount());
+        assertTrue("miss took " + missMs + "ms", missMs >= NETWORK_DELAY_MS);
+        assertTrue("hit took " + hitMs + "ms", hitMs < NETWORK_DELAY_MS / 4);
+    }
+
+    @Test
+    public void expiredAndDistantLocationsGoToTheNetwork() throws Exception {
+        WeatherClient client = client(false);
+        mServer.enqueue(forecast());
+        mServer.enqueue(forecast());
+        mServer.enqueue(forecast());
+
+        client.fetch(52.2053, 0.1218);
+        mClock.time += WeatherClient.TTL_MS;
+        client.fetch(52.2053, 0.1218);
+        client.fetch(51.5074, -0.1278);
+
+        assertEquals(0, client.hitCount());
+        assertEquals(3, client.missCount());
+        assertEquals(3, mServer.getRequestCount());
+    }
+
+    @Test
+    public void recentCellsAreKeptForTheWayBack() throws Exception {
+        WeatherClient client = client(false);
+        mServer.enqueue(forecast());
+        mServer.enqueue(forecast());
+
+        // Cambridge to London and back within the TTL.
+        Forecast home = client.fetch(52.2053, 0.1218);
+        mClock.time += TimeUnit.MINUTES.toMillis(5);
+        client.fetch(51.5074, -0.1278);
+        mClock.time += TimeUnit.MINUTES.toMillis(5);
+        assertSame(home, client.fetch(52.2053, 0.1218));
+
+        assertEquals(1, client.hitCount());
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    private static String httpDate(long time) {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'",
+                Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format.format(new Date(time));
+    }
+
+    @Test
+    public void forecastsKeepTheTimeTheyWereFetched() throws Exception {
+        WeatherClient client = client(false);
+        long served = mClock.time - TimeUnit.MINUTES.toMillis(3);
+        mServer.enqueue(forecast().setHeader("Date", httpDate(served)));
+        mServer.enqueue(forecast());
+
+        assertEquals(served, client.fetch(52.2053, 0.1218).fetchedAt);
+        // Answered from memory, it is as old as it was.
+        mClock.time += TimeUnit.MINUTES.toMillis(5);
+        Forecast cached = client.fetch(52.2053, 0.1218);
+        assertEquals(served, cached.fetchedAt);
+        assertEquals(served, WeatherPayloadBuilder.build(cached, mClock.time).fetchTime);
+
+        // The TTL runs from the fetch too; without a Date, the fetch was now.
+        mClock.time = served + WeatherClient.TTL_MS;
+        assertEquals(mClock.time, client.fetch(52.2053, 0.1218).fetchedAt);
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void failuresAreNotCached() throws Exception {
+        WeatherClient client = client(false);
+        mServer.enqueue(new MockResponse().setResponseCode(500));
+        mServer.enqueue(forecast());
+
+        assertNull(client.fetch(52.2053, 0.1218));
+        assertEquals(8.3f, client.fetch(52.2053, 0.1218).temperature, 0);
+        assertEquals(2, client.missCount());
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    @Test
+    public void diskCacheAnswersAfterTheTtlWhileTheResponseIsFresh() throws Exception {
+        WeatherClient client = client(true);
+        mServer.enqueue(forecast().addHeader("Cache-Control", "max-age=3600"));
+
+        client.fetch(52.2053, 0.1218);
+        mClock.time += WeatherClient.TTL_MS;
+        long start = System.nanoTime();
+        assertEquals(8.3f, client.fetch(52.2053, 0.1218).temperature, 0);
+        long diskMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(2, client.missCount());
+        assertEquals(1, mServer.getRequestCount());
+        assertEquals(1, client.diskCache().getHitCount());
+        assertTrue("disk hit took " + diskMs + "ms", diskMs < NETWORK_DELAY_MS);
+    }
+}
@@ -0,0 +1,95 @@
+package thjread.dilithium;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class WeatherPushTest {
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+    private static final long START = 1460127600000L;
+
+    private final WeatherPush mPush = new WeatherPush();
+
+    private static WeatherPayload forecast(long fetchTime, float temperature) {
+        WeatherPayload weather = new WeatherPayload();
+        weather.fetchTime = fetchTime;
+        weather.temperature = temperature;
+        weather.hourlyStart = fetchTime;
+        weather.hourCount = WeatherPayload.MAX_HOURS;
+        Arrays.fill(weather.hourlyTemperature, temperature);
+        return weather;
+    }
+
+    private static WeatherPayload decode(byte[] data) {
+        WeatherPayload weather = new WeatherPayload();
+        assertTrue(weather.decode(ByteBuffer.wrap(data)));
+        return weather;
+    }
+
+    @Test
+    public void pushesOnlyVisibleChanges() {
+        assertNotNull(mPush.data(forecast(START, 10), false, START));
+        // Newer, but the same to the watch.
+        assertNull(mPush.data(forecast(START + 60 * 1000, 10.1f), false, START + 60 * 1000));
+        assertNotNull(mPush.data(forecast(START + 120 * 1000, 12), false, START + 120 * 1000));
+    }
+
+    @Test
+    public void forcedRequestWithAnUnchangedForecastStillReplies() {
+        WeatherPayload pushed = forecast(START, 10);
+        byte[] first = mPush.data(pushed, false, START);
+
+        // A TTL cache hit answers with the forecast already in the DataItem.
+        long now = START + HOUR;
+        byte[] reply = mPush.data(forecast(START, 10), true, now);
+        assertNotNull(reply);
+        assertFalse(Arrays.equals(first, reply));
+        assertEquals(START, decode(reply).fetchTime);
+
+        // So does a request with nothing fetched at all, and each reply changes the item again.
+        byte[] again = mPush.data(null, true, now + 1000);
+        assertNotNull(again);
+        assertFalse(Arrays.equals(reply, again));
+        assertEquals(10, decode(again).temperatureAt(now), 0);
+    }
+
+    @Test
+    public void forcedRequestsAnswerWithTheNewestForecast() {
+        mPush.data(forecast(START + HOUR, 12), false, START + HOUR);
+        byte[] reply = mPush.data(forecast(START, 10), true, START + HOUR);
+        assertEquals(START + HOUR, decode(reply).fetchTime);
+        // An unchanged but newer forecast is put as it is.
+        reply = mPush.data(forecast(START + 2 * HOUR, 12), true, START + 2 * HOUR);
+        assertEquals(decode(reply).encodedSize(), reply.length);
+        assertEquals(START + 2 * HOUR, mPush.pushed().fetchTime);
+    }
+
+    @Test
+    public void nothingToAnswerWith() {
+        assertNull(mPush.data(null, true, START));
+    }
+
+    @Test
+    public void anItemFromAnEarlierRunAnswersRequests() {
+        mPush.setPushed(forecast(START, 10));
+        assertNull(mPush.data(forecast(START, 10), false, START + HOUR));
+        assertEquals(START, decode(mPush.data(null, true, START + HOUR)).fetchTime);
+    }
+
+    @Test
+    public void aFailedPutIsPushedAgain() {
+        WeatherPayload pushed = forecast(START, 10);
+        mPush.data(pushed, false, START);
+        mPush.onPutFailed(pushed);
+        assertNull(mPush.pushed());
+        assertNotNull(mPush.data(forecast(START + 60 * 1000, 10), false, START + 60 * 1000));
+    }
+}